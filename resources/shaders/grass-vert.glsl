@@ -0,0 +1,57 @@
+#version 330
+
+in vec3 a_position;
+in vec3 a_normal;
+in vec2 a_texCoord0;
+
+out vec3 v_position;
+out vec3 v_normal;
+out vec2 v_texCoord0;
+
+uniform mat4 projectionMat; // view-projection matrix
+uniform mat4 nodeMat; // transform of the model node
+uniform mat3 nodeNormalMat; // transpose of inversed node transform
+
+// Grass bits of tile x, y are in texel (y, x)
+uniform usampler2D grass;
+// Each instance is one grass quadrant of a tile in the drawn rectangle,
+// which starts at grassOrigin and has grassColumn tiles in each column
+uniform ivec2 grassOrigin;
+uniform int grassColumn;
+// Only blades which pick this of grassModelCount models are drawn
+uniform int grassModel;
+uniform int grassModelCount;
+
+void main() {
+	int quadrant = gl_InstanceID & 3;
+	int tile = gl_InstanceID >> 2;
+	int x = grassOrigin.x + tile / grassColumn;
+	int y = grassOrigin.y + tile % grassColumn;
+	int bit = 1 << quadrant;
+
+	// Same as WorldRenderer.pickGrass, rotation and scale
+	int hash = (31 ^ bit) * x + y;
+	uint grassBits = texelFetch(grass, ivec2(y, x), 0).r;
+	if ((grassBits & uint(bit)) == 0u || hash % grassModelCount != grassModel) {
+		// Cut or other model, collapse the whole blade outside of the clip space
+		v_position = vec3(0.0);
+		v_normal = vec3(0.0, 1.0, 0.0);
+		v_texCoord0 = vec2(0.0);
+		gl_Position = vec4(2.0, 2.0, 2.0, 1.0);
+		return;
+	}
+
+	float angle = radians(float((hash * 15) % 360));
+	float scale = float(hash % 100) / 100.0 * 0.4 + 0.8;
+	float s = sin(angle);
+	float c = cos(angle);
+	mat3 rotation = mat3(c, 0.0, -s, 0.0, 1.0, 0.0, s, 0.0, c);
+	vec3 position = vec3(float(x) + 0.25 + 0.5 * float(quadrant & 1), 0.0, float(y) + 0.25 + 0.5 * float(quadrant >> 1));
+
+	vec3 worldPos = rotation * ((nodeMat * vec4(a_position, 1.0)).xyz * scale) + position;
+	v_position = worldPos;
+	v_normal = rotation * (nodeNormalMat * a_normal);
+	v_texCoord0 = a_texCoord0;
+
+	gl_Position = projectionMat * vec4(worldPos, 1.0);
+}
@@ -9,25 +9,23 @@ out vec3 v_normal;
 out vec2 v_texCoord0;
 
 uniform mat4 projectionMat; // view-projection matrix
-// Instance data
-// model matrix
-in vec4 modelMat1;
-in vec4 modelMat2;
-in vec4 modelMat3;
-in vec4 modelMat4;
-// transpose of inversed model matrix
-in vec3 normalMat1;
-in vec3 normalMat2;
-in vec3 normalMat3;
+uniform mat4 nodeMat; // transform of the model node
+uniform mat3 nodeNormalMat; // transpose of inversed node transform
+// Instance data, see Model.drawInstanced
+in vec3 instancePosition;
+in float instanceYaw; // rotation around y, radians
+in float instanceScale;
 
 void main() {
-	mat4 modelMat = mat4(modelMat1, modelMat2, modelMat3, modelMat4);
-	mat3 normalMat = mat3(normalMat1, normalMat2, normalMat3);
+	float s = sin(instanceYaw);
+	float c = cos(instanceYaw);
+	mat3 rotation = mat3(c, 0.0, -s, 0.0, 1.0, 0.0, s, 0.0, c);
 
-	vec4 worldPos = modelMat * vec4(a_position, 1.0);
-    v_position = worldPos.xyz;
-    v_normal = normalMat * a_normal;
+	vec3 worldPos = rotation * ((nodeMat * vec4(a_position, 1.0)).xyz * instanceScale) + instancePosition;
+    v_position = worldPos;
+    // Uniform scale only changes the length, which is normalized later
+    v_normal = rotation * (nodeNormalMat * a_normal);
     v_texCoord0 = a_texCoord0;
 
-    gl_Position = projectionMat * worldPos;
-}
+    gl_Position = projectionMat * vec4(worldPos, 1.0);
+}
\ No newline at end of file
@@ -13,8 +13,11 @@ import com.badlogic.gdx.utils.FloatArray;
 import com.badlogic.gdx.utils.viewport.ScreenViewport;
 import com.darkyen.midnightmower.font.Font;
 import com.darkyen.midnightmower.font.GlyphLayout;
+import com.darkyen.midnightmower.game.Autosave;
 import com.darkyen.midnightmower.game.Cameraman;
 import com.darkyen.midnightmower.game.Level;
+import com.darkyen.midnightmower.game.LevelCache;
+import com.darkyen.midnightmower.game.LevelPrefetcher;
 import com.darkyen.midnightmower.game.WorldRenderer;
 import com.darkyen.midnightmower.gl.Environment;
 import com.darkyen.midnightmower.gl.Light;
@@ -22,6 +25,8 @@ import com.darkyen.midnightmower.gl.Skybox;
 import com.darkyen.midnightmower.gl.SpriteBatch;
 import com.darkyen.midnightmower.state.IntroState;
 
+import java.io.File;
+
 /**
  *
  */
@@ -32,9 +37,18 @@ public final class Game implements ApplicationListener {
     private State state = null;
     private State nextState = null;
     public Level level;
+    /** Levels are played by {@link com.darkyen.midnightmower.game.MowerBot} and continue automatically */
+    public boolean autopilot = false;
+    public final LevelCache levelCache = new LevelCache(new File("cache/levels"));
+    public final LevelPrefetcher levelPrefetcher = new LevelPrefetcher(levelCache);
+    public final Autosave autosave = new Autosave(new File("saves/autosave.bin"));
+    /** Run restored from the autosave at start, null if there was none */
+    public Autosave.Saved resumed;
 
     //Render world
     private final ScreenViewport worldViewport = new ScreenViewport(new PerspectiveCamera());
+    /** World further from the camera than this is not drawn, default is the far plane of the camera */
+    public float drawDistance = 100f;
     private Environment environment;
     private final Light moonLight = new Light();
     private Skybox skybox;
@@ -124,7 +138,8 @@ public final class Game implements ApplicationListener {
         GLProfiler.listener = GLErrorListener.THROWING_LISTENER;
 
         // Game
-        level = new Level(1, System.currentTimeMillis());
+        resumed = autosave.load();
+        level = resumed != null ? resumed.level : levelCache.get(1, System.currentTimeMillis());
 
         // World
         environment = new Environment(worldViewport.getCamera());
@@ -186,9 +201,9 @@ public final class Game implements ApplicationListener {
 
         state.preRender();
 
-        leftHeadlight.direction.set(MathUtils.sinDeg(level.playerAngle), 0f, MathUtils.cosDeg(level.playerAngle));
+        leftHeadlight.direction.set(MathUtils.sinDeg(level.renderPlayerAngle), 0f, MathUtils.cosDeg(level.renderPlayerAngle));
         rightHeadlight.direction.set(leftHeadlight.direction);
-        leftHeadlight.position.set(level.playerPos.x, 0.1f, level.playerPos.y);
+        leftHeadlight.position.set(level.renderPlayerPos.x, 0.1f, level.renderPlayerPos.y);
         rightHeadlight.position.set(leftHeadlight.position);
         final float lightOffset = 0.15f;
         leftHeadlight.position.add(leftHeadlight.direction.z * lightOffset, 0f, -leftHeadlight.direction.x * lightOffset);
@@ -197,7 +212,7 @@ public final class Game implements ApplicationListener {
         environment.getPointLights();// Mark dirty
 
         environment.begin();
-        WorldRenderer.render(level, environment);
+        WorldRenderer.render(level, environment, worldViewport.getCamera(), drawDistance);
         environment.end();
 
         state.postRender();
@@ -252,6 +267,10 @@ public final class Game implements ApplicationListener {
 
     @Override
     public void dispose() {
+        levelPrefetcher.dispose();
+        levelCache.dispose();
+        WorldRenderer.dispose();
+        autosave.dispose();
         environment.dispose();
         skybox.dispose();
         uiBatch.dispose();
@@ -264,9 +283,9 @@ public final class Game implements ApplicationListener {
 
         @Override
         public void set(Vector3 position, Vector3 direction) {
-            position.set(level.playerPos.x, 1.5f, level.playerPos.y);
+            position.set(level.renderPlayerPos.x, 1.5f, level.renderPlayerPos.y);
 
-            final Vector2 offset = this.offset.set(0f, -2f).rotate(-level.playerAngle);
+            final Vector2 offset = this.offset.set(0f, -2f).rotate(-level.renderPlayerAngle);
             position.add(offset.x, 0f, offset.y);
 
             direction.set(-offset.x, -0.4f, -offset.y).nor();
@@ -0,0 +1,167 @@
+package com.darkyen.midnightmower;
+
+import com.badlogic.gdx.math.RandomXS128;
+import com.darkyen.midnightmower.game.InputRecording;
+import com.darkyen.midnightmower.game.Level;
+import com.darkyen.midnightmower.game.LevelCache;
+import com.darkyen.midnightmower.game.MowerBot;
+import com.darkyen.midnightmower.game.MowerSwarm;
+import com.darkyen.midnightmower.game.Simulation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Plays levels by a scripted driver as fast as possible, without window, GL or audio.
+ * For soak and throughput testing of the simulation.
+ *
+ * Arguments: [bot] [levels] [first order] [max minutes of game time per level]
+ * or: replay &lt;recording file&gt;
+ * or: swarm [mowers] [order] [seconds of game time]
+ *
+ * Levels are driven by {@link WanderInput}, or by {@link MowerBot} when the first argument is "bot".
+ */
+public final class Headless {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 2 && "replay".equals(args[0])) {
+            replay(new File(args[1]));
+            return;
+        }
+        if (args.length > 0 && "swarm".equals(args[0])) {
+            swarm(args.length > 1 ? Integer.parseInt(args[1]) : 1000,
+                    args.length > 2 ? Integer.parseInt(args[2]) : 30,
+                    args.length > 3 ? Float.parseFloat(args[3]) : 60f);
+            return;
+        }
+
+        final boolean bot = args.length > 0 && "bot".equals(args[0]);
+        if (bot) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+
+        final int levels = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        final int firstOrder = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        final float maxMinutes = args.length > 2 ? Float.parseFloat(args[2]) : 30f;
+        final long maxTicks = (long) (maxMinutes * 60f / Simulation.TICK);
+
+        long totalTicks = 0;
+        long totalNanos = 0;
+        long planNanos = 0;
+        long skippedCorners = 0, replans = 0;
+        int completed = 0;
+        for (int i = 0; i < levels; i++) {
+            final int order = firstOrder + i;
+            final Level level = new Level(order, order, null);
+            final Simulation simulation = new Simulation(level);
+            simulation.startEngine();
+
+            final long planStart = System.nanoTime();
+            final Simulation.InputSource input = bot ? new MowerBot(level) : new WanderInput(order);
+            final long start = System.nanoTime();
+            final long ticks = simulation.run(input, maxTicks);
+            final long nanos = System.nanoTime() - start;
+            planNanos += start - planStart;
+            if (bot) {
+                skippedCorners += ((MowerBot) input).getSkippedCorners();
+                replans += ((MowerBot) input).getReplans();
+            }
+
+            totalTicks += ticks;
+            totalNanos += nanos;
+            if (simulation.isCompleted()) completed++;
+            System.out.printf("Level %d (%dx%d): %s in %.1f s of game time, %d grass left, %.1f ms%n",
+                    order, level.width, level.height, simulation.isCompleted() ? "completed" : "not completed",
+                    simulation.getLevelTime(), level.remainingGrass, nanos / 1e6);
+        }
+
+        final double seconds = totalNanos / 1e9;
+        System.out.printf("%d/%d levels completed, %d ticks in %.2f s: %.0f ticks/s, %.0fx real time%n",
+                completed, levels, totalTicks, seconds, totalTicks / seconds, totalTicks * Simulation.TICK / seconds);
+        if (bot) {
+            System.out.printf("Route planning took %.2f ms per level, %d corners skipped, %d routes planned again%n",
+                    planNanos / 1e6 / levels, skippedCorners, replans);
+        }
+    }
+
+    /** Play the recording and print the state in which it ends, to compare runs before and after a change. */
+    private static void replay(File file) throws IOException {
+        final InputRecording recording = InputRecording.load(file);
+        if (recording == null) {
+            System.err.println("Not a valid recording: " + file);
+            return;
+        }
+        final LevelCache levelCache = new LevelCache(new File("cache/levels"));
+        final Level level = recording.createLevel(levelCache);
+        levelCache.dispose();
+        final Simulation simulation = new Simulation(level);
+        simulation.startEngine();
+
+        final long start = System.nanoTime();
+        final InputRecording.Replay replay = recording.replay();
+        while (!replay.isFinished()) {
+            simulation.tick(replay.input(simulation));
+        }
+        final long nanos = System.nanoTime() - start;
+
+        System.out.printf("Replayed %d ticks in %.1f ms: player at %s angle %s, tile %d %d, %d grass left, level time %.3f s%n",
+                recording.getTicks(), nanos / 1e6, level.playerPos, level.playerAngle, level.playerTileX, level.playerTileY,
+                level.remainingGrass, simulation.getLevelTime());
+    }
+
+    /** Drive a {@link MowerSwarm} on its own thread and then on all threads, results must be the same. */
+    private static void swarm(int mowers, int order, float seconds) {
+        final long ticks = (long) (seconds / Simulation.TICK);
+        long expectedHash = 0;
+        for (ForkJoinPool pool : new ForkJoinPool[]{null, ForkJoinPool.commonPool()}) {
+            final Level level = new Level(order, order, null);
+            final MowerSwarm swarm = new MowerSwarm(level, mowers, order);
+            final long start = System.nanoTime();
+            for (long tick = 0; tick < ticks; tick++) {
+                swarm.tick(pool);
+            }
+            final long nanos = System.nanoTime() - start;
+            long hash = level.remainingGrass;
+            for (int i = 0; i < mowers; i++) {
+                hash = hash * 31 + Float.floatToIntBits(swarm.x[i]);
+                hash = hash * 31 + Float.floatToIntBits(swarm.y[i]);
+                hash = hash * 31 + Float.floatToIntBits(swarm.angle[i]);
+            }
+            System.out.printf("%d mowers on level %d (%dx%d), %s: %d ticks in %.1f ms, %.0f mower ticks/s, %d grass left, state %x%n",
+                    mowers, order, level.width, level.height, pool == null ? "calling thread" : "parallelism " + pool.getParallelism(),
+                    ticks, nanos / 1e6, (double) ticks * mowers / (nanos / 1e9), level.remainingGrass, hash);
+            if (pool != null && hash != expectedHash) {
+                System.out.println("Results differ!");
+            }
+            expectedHash = hash;
+        }
+    }
+
+    /** Drives forward and turns a random amount whenever it hits a wall, or randomly from time to time. */
+    public static final class WanderInput implements Simulation.InputSource {
+
+        private final RandomXS128 random;
+        private int turnTicks = 0;
+        private int turnDirection = Simulation.INPUT_LEFT;
+
+        public WanderInput(long seed) {
+            this.random = new RandomXS128(seed);
+        }
+
+        @Override
+        public int input(Simulation simulation) {
+            if (turnTicks == 0 && (simulation.isCollided() || random.nextInt(600) == 0)) {
+                turnTicks = 20 + random.nextInt(200);
+                turnDirection = random.nextBoolean() ? Simulation.INPUT_LEFT : Simulation.INPUT_RIGHT;
+            }
+
+            if (turnTicks > 0) {
+                turnTicks--;
+                return Simulation.INPUT_FORWARD | turnDirection;
+            }
+            return Simulation.INPUT_FORWARD;
+        }
+    }
+}
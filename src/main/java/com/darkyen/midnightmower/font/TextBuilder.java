@@ -0,0 +1,144 @@
+package com.darkyen.midnightmower.font;
+
+/**
+ * Reusable mutable text for {@link GlyphLayout#setText(CharSequence, com.badlogic.gdx.graphics.Color, float, int)},
+ * with number formatting that does not allocate (unlike {@link StringBuilder#append(float)} or String.format).
+ *
+ * Only {@link #toString()} and {@link #subSequence(int, int)} allocate.
+ */
+@SuppressWarnings("UnusedReturnValue")
+public final class TextBuilder implements CharSequence {
+
+    private static final int[] POWERS_OF_TEN = {1, 10, 100, 1_000, 10_000, 100_000, 1_000_000, 10_000_000, 100_000_000};
+
+    private char[] chars;
+    private int length = 0;
+
+    public TextBuilder() {
+        this(64);
+    }
+
+    public TextBuilder(int capacity) {
+        chars = new char[Math.max(capacity, 16)];
+    }
+
+    private void ensureCapacity(int additional) {
+        final int required = length + additional;
+        if (required > chars.length) {
+            final char[] newChars = new char[Math.max(required, chars.length * 2)];
+            System.arraycopy(chars, 0, newChars, 0, length);
+            chars = newChars;
+        }
+    }
+
+    public TextBuilder clear() {
+        length = 0;
+        return this;
+    }
+
+    public TextBuilder append(char c) {
+        ensureCapacity(1);
+        chars[length++] = c;
+        return this;
+    }
+
+    public TextBuilder append(CharSequence text) {
+        final int textLength = text.length();
+        ensureCapacity(textLength);
+        if (text instanceof String) {
+            ((String) text).getChars(0, textLength, chars, length);
+        } else {
+            for (int i = 0; i < textLength; i++) {
+                chars[length + i] = text.charAt(i);
+            }
+        }
+        length += textLength;
+        return this;
+    }
+
+    public TextBuilder append(int value) {
+        return append((long) value);
+    }
+
+    public TextBuilder append(long value) {
+        if (value == Long.MIN_VALUE) {
+            return append("-9223372036854775808");
+        }
+        if (value < 0) {
+            append('-');
+            value = -value;
+        }
+        appendDigits(value, 1);
+        return this;
+    }
+
+    /** Append non-negative value, padded with zeros to at least minDigits */
+    private void appendDigits(long value, int minDigits) {
+        int digits = 1;
+        for (long rest = value / 10; rest != 0; rest /= 10) {
+            digits++;
+        }
+        digits = Math.max(digits, minDigits);
+
+        ensureCapacity(digits);
+        for (int i = length + digits - 1; i >= length; i--) {
+            chars[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        length += digits;
+    }
+
+    /** Append value rounded to given amount of decimal places (at most 8), without exponent */
+    public TextBuilder append(float value, int decimals) {
+        if (Float.isNaN(value)) {
+            return append("NaN");
+        }
+        if (Float.isInfinite(value)) {
+            return append(value > 0 ? "Infinity" : "-Infinity");
+        }
+        decimals = Math.max(0, Math.min(decimals, POWERS_OF_TEN.length - 1));
+        final int scale = POWERS_OF_TEN[decimals];
+        final long scaled = Math.round(Math.abs((double) value) * scale);
+        if (value < 0f && scaled != 0) {
+            append('-');
+        }
+        appendDigits(scaled / scale, 1);
+        if (decimals > 0) {
+            append('.');
+            appendDigits(scaled % scale, decimals);
+        }
+        return this;
+    }
+
+    /** Append time as seconds with milliseconds, for example "12.034" */
+    public TextBuilder appendSecondsMillis(float seconds) {
+        final long millis = (long) (seconds * 1000f);
+        append(millis / 1000);
+        append('.');
+        appendDigits(Math.abs(millis % 1000), 3);
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+        return chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return new String(chars, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+}
@@ -0,0 +1,196 @@
+package com.darkyen.midnightmower.game;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Snapshot of a fixed size level in progress, so that the run can be resumed after the game is restarted.
+ *
+ * Only the player pose and times are taken on the calling thread, tiles are packed and written on a background thread.
+ * Grass can only be cut, so when it is cut during writing, the snapshot just has a bit less grass than at the moment
+ * of {@link #save(Level, float, float)}.
+ *
+ * File format (big endian):
+ * <pre>
+ * int magic, int version
+ * int order, long seed, int width, int height
+ * float playerX, float playerY, int playerTileX, int playerTileY, float playerAngle
+ * float levelTime, float previousTotalLevelTime
+ * tiles as in {@link LevelCache}
+ * </pre>
+ * Not thread safe, should be used only from the render thread.
+ */
+public final class Autosave {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Autosave.class);
+
+    private static final int MAGIC = 0x4D4D5356;// MMSV
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 8 + 4 + 4 + 4 + 4 + 4 + 4 + 4 + 4 + 4;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "Autosave");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final File file;
+    private Future<?> pending = null;
+    /** Reused by the background thread */
+    private ByteBuffer buffer = ByteBuffer.allocateDirect(0);
+
+    public Autosave(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Start writing the snapshot of the level in background. Endless levels are not saved.
+     * @return false if the previous snapshot is still being written, nothing is done then
+     */
+    public boolean save(Level level, float levelTime, float previousTotalLevelTime) {
+        if (level.isEndless() || (pending != null && !pending.isDone())) {
+            return false;
+        }
+        final float playerX = level.playerPos.x, playerY = level.playerPos.y, playerAngle = level.playerAngle;
+        final int playerTileX = level.playerTileX, playerTileY = level.playerTileY;
+        pending = executor.submit(() -> {
+            try {
+                write(level, playerX, playerY, playerTileX, playerTileY, playerAngle, levelTime, previousTotalLevelTime);
+            } catch (IOException e) {
+                LOG.warn("Failed to write autosave {}", file, e);
+            }
+        });
+        return true;
+    }
+
+    /** Remove the snapshot, after snapshots which are still being written. */
+    public void delete() {
+        pending = executor.submit(() -> {
+            try {
+                Files.deleteIfExists(file.toPath());
+            } catch (IOException e) {
+                LOG.warn("Failed to delete autosave {}", file, e);
+            }
+        });
+    }
+
+    private void write(Level level, float playerX, float playerY, int playerTileX, int playerTileY, float playerAngle,
+                       float levelTime, float previousTotalLevelTime) throws IOException {
+        final int size = HEADER_SIZE + LevelCache.tilesBytes(level.width * level.height);
+        ByteBuffer data = buffer;
+        if (data.capacity() < size) {
+            buffer = data = ByteBuffer.allocateDirect(size);
+        }
+        data.clear();
+        data.putInt(MAGIC).putInt(VERSION).putInt(level.order).putLong(level.seed).putInt(level.width).putInt(level.height);
+        data.putFloat(playerX).putFloat(playerY).putInt(playerTileX).putInt(playerTileY).putFloat(playerAngle);
+        data.putFloat(levelTime).putFloat(previousTotalLevelTime);
+        LevelCache.putTiles(level, data);
+        data.flip();
+
+        // Write to temporary file first, so that a partially written file is never visible
+        final Path file = this.file.toPath().toAbsolutePath();
+        final Path directory = file.getParent();
+        Files.createDirectories(directory);
+        final Path temporary = Files.createTempFile(directory, "autosave-", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /** @return the saved run or null if there is none or it is not valid */
+    public Saved load() {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                LOG.warn("Autosave {} is not valid", file);
+                return null;
+            }
+            final MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+
+            if (data.getInt() != MAGIC || data.getInt() != VERSION) {
+                LOG.warn("Autosave {} is not valid", file);
+                return null;
+            }
+            final int order = data.getInt();
+            final long seed = data.getLong();
+            final int width = data.getInt();
+            final int height = data.getInt();
+            final float playerX = data.getFloat();
+            final float playerY = data.getFloat();
+            final int playerTileX = data.getInt();
+            final int playerTileY = data.getInt();
+            final float playerAngle = data.getFloat();
+            final float levelTime = data.getFloat();
+            final float previousTotalLevelTime = data.getFloat();
+
+            final long tiles = (long) width * height;
+            if (width <= 0 || height <= 0 || tiles > Integer.MAX_VALUE
+                    || fileSize != HEADER_SIZE + LevelCache.tilesBytes((int) tiles)
+                    || playerTileX < 0 || playerTileX >= width || playerTileY < 0 || playerTileY >= height) {
+                LOG.warn("Autosave {} is not valid", file);
+                return null;
+            }
+
+            final byte[] levelTiles = LevelCache.getTiles(data, (int) tiles);
+            final Level level = new Level(order, seed, width, height, levelTiles, 0, playerTileX, playerTileY, playerAngle);
+            level.remainingGrass = level.grassBoard.getGrass();
+            level.playerPos.set(playerX, playerY);
+            level.snapRenderPlayer();
+            return new Saved(level, levelTime, previousTotalLevelTime);
+        } catch (IOException e) {
+            LOG.warn("Failed to load autosave {}", file, e);
+            return null;
+        }
+    }
+
+    /** Wait for the snapshot which is being written. */
+    public void dispose() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                LOG.warn("Autosave did not finish in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Level restored from the snapshot, with the times of its run. */
+    public static final class Saved {
+        public final Level level;
+        /** Seconds the engine was running on the level */
+        public final float levelTime;
+        public final float previousTotalLevelTime;
+
+        Saved(Level level, float levelTime, float previousTotalLevelTime) {
+            this.level = level;
+            this.levelTime = levelTime;
+            this.previousTotalLevelTime = previousTotalLevelTime;
+        }
+    }
+}
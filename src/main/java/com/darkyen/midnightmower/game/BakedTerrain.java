@@ -0,0 +1,87 @@
+package com.darkyen.midnightmower.game;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.utils.Disposable;
+import com.darkyen.midnightmower.gl.StaticBatch;
+
+/**
+ * Terrain of a fixed size level which never changes (ground tiles, cliffs and overhangs), baked once
+ * into a {@link StaticBatch} per {@link #CHUNK_SIZE}x{@link #CHUNK_SIZE} tile chunk.
+ * The border around the level belongs to the nearest chunk.
+ * Each chunk has bounds which contain its terrain and the grass which may grow on it, for culling.
+ */
+public final class BakedTerrain implements Disposable {
+
+    public static final int CHUNK_SIZE = GrassBoard.CHUNK_SIZE;
+    /** Above the tallest grass blade */
+    public static final float GRASS_HEIGHT = 2f;
+
+    public final Level level;
+    public final int chunksX, chunksY;
+    /** Index chunkX * chunksY + chunkY */
+    private final StaticBatch[] chunks;
+    private final BoundingBox[] chunkBounds;
+
+    public BakedTerrain(Level level) {
+        if (level.isEndless()) {
+            throw new IllegalArgumentException("Endless levels are not supported");
+        }
+        this.level = level;
+        this.chunksX = (level.width + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        this.chunksY = (level.height + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        this.chunks = new StaticBatch[chunksX * chunksY];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = new StaticBatch();
+        }
+
+        final Vector3 position = new Vector3();
+        for (int x = 0; x < level.width; x++) {
+            for (int y = 0; y < level.height; y++) {
+                if (level.traversable(x, y)) {
+                    WorldRenderer.renderGround(chunk(x, y), position, x, y);
+                }
+            }
+        }
+        final BorderTiles borders = level.borders;
+        for (int i = 0; i < borders.size; i++) {
+            final int x = borders.x[i], y = borders.y[i];
+            WorldRenderer.renderBorder(chunk(x, y), position, x, y, borders.neighbors[i]);
+        }
+
+        this.chunkBounds = new BoundingBox[chunks.length];
+        for (int chunkX = 0; chunkX < chunksX; chunkX++) {
+            for (int chunkY = 0; chunkY < chunksY; chunkY++) {
+                final int i = chunkX * chunksY + chunkY;
+                chunks[i].build();
+                final BoundingBox bounds = chunkBounds[i] = new BoundingBox(chunks[i].bounds);
+                bounds.ext(chunkX * CHUNK_SIZE, 0f, chunkY * CHUNK_SIZE);
+                bounds.ext(Math.min((chunkX + 1) * CHUNK_SIZE, level.width), GRASS_HEIGHT, Math.min((chunkY + 1) * CHUNK_SIZE, level.height));
+            }
+        }
+    }
+
+    private StaticBatch chunk(int x, int y) {
+        final int chunkX = MathUtils.clamp(Math.floorDiv(x, CHUNK_SIZE), 0, chunksX - 1);
+        final int chunkY = MathUtils.clamp(Math.floorDiv(y, CHUNK_SIZE), 0, chunksY - 1);
+        return chunks[chunkX * chunksY + chunkY];
+    }
+
+    /** @return baked terrain of the chunk in [0, chunksX) x [0, chunksY) */
+    public StaticBatch getChunk(int chunkX, int chunkY) {
+        return chunks[chunkX * chunksY + chunkY];
+    }
+
+    /** @return bounds of everything in the chunk in [0, chunksX) x [0, chunksY), do not modify */
+    public BoundingBox getChunkBounds(int chunkX, int chunkY) {
+        return chunkBounds[chunkX * chunksY + chunkY];
+    }
+
+    @Override
+    public void dispose() {
+        for (StaticBatch chunk : chunks) {
+            chunk.dispose();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.darkyen.midnightmower.game;
+
+import com.badlogic.gdx.utils.ByteArray;
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * Non traversable tiles of a fixed size level which touch a traversable tile, including the border around the level,
+ * each with the mask of its traversable neighbors. Traversability never changes, so this is computed once per level.
+ */
+public final class BorderTiles {
+
+    //region Neighbor bits
+    public static final int RIGHT = 1;// x + 1
+    public static final int LEFT = 1 << 1;// x - 1
+    public static final int UP = 1 << 2;// y + 1
+    public static final int DOWN = 1 << 3;// y - 1
+    public static final int RIGHT_UP = 1 << 4;
+    public static final int LEFT_UP = 1 << 5;
+    public static final int RIGHT_DOWN = 1 << 6;
+    public static final int LEFT_DOWN = 1 << 7;
+    //endregion
+
+    /** Amount of border tiles */
+    public final int size;
+    /** Coordinates of each border tile, may be -1 or width/height for the border around the level */
+    public final int[] x, y;
+    /** Neighbor bits of each border tile */
+    public final byte[] neighbors;
+
+    private BorderTiles(int[] x, int[] y, byte[] neighbors) {
+        this.size = neighbors.length;
+        this.x = x;
+        this.y = y;
+        this.neighbors = neighbors;
+    }
+
+    /** @return neighbor bits of traversable neighbors of the tile */
+    public static int neighbors(Level level, int x, int y) {
+        int neighbors = 0;
+        if (level.traversable(x + 1, y)) neighbors |= RIGHT;
+        if (level.traversable(x - 1, y)) neighbors |= LEFT;
+        if (level.traversable(x, y + 1)) neighbors |= UP;
+        if (level.traversable(x, y - 1)) neighbors |= DOWN;
+        if (level.traversable(x + 1, y + 1)) neighbors |= RIGHT_UP;
+        if (level.traversable(x - 1, y + 1)) neighbors |= LEFT_UP;
+        if (level.traversable(x + 1, y - 1)) neighbors |= RIGHT_DOWN;
+        if (level.traversable(x - 1, y - 1)) neighbors |= LEFT_DOWN;
+        return neighbors;
+    }
+
+    /** @param level fixed size level, its tiles must be set */
+    static BorderTiles of(Level level) {
+        final IntArray x = new IntArray();
+        final IntArray y = new IntArray();
+        final ByteArray neighbors = new ByteArray();
+        for (int tileX = -1; tileX <= level.width; tileX++) {
+            for (int tileY = -1; tileY <= level.height; tileY++) {
+                if (level.traversable(tileX, tileY)) continue;
+                final int tileNeighbors = neighbors(level, tileX, tileY);
+                if (tileNeighbors == 0) continue;
+                x.add(tileX);
+                y.add(tileY);
+                neighbors.add((byte) tileNeighbors);
+            }
+        }
+        return new BorderTiles(x.toArray(), y.toArray(), neighbors.toArray());
+    }
+}
@@ -0,0 +1,67 @@
+package com.darkyen.midnightmower.game;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Splits per-column work on a level grid over a {@link ForkJoinPool}.
+ * Processing of a column must not depend on any other column, so the result does not depend on the thread count.
+ */
+final class ColumnWork {
+
+    /** Levels with less tiles than this are not worth splitting. */
+    static final int MIN_PARALLEL_TILES = 128 * 128;
+
+    interface Columns {
+        /** Process columns [fromX, toX) and return a value which will be summed with other column ranges. */
+        int process(int fromX, int toX);
+    }
+
+    /**
+     * @param pool to run in, null to run on the calling thread
+     * @return sum of all {@link Columns#process(int, int)} results
+     */
+    static int run(ForkJoinPool pool, int width, int height, Columns columns) {
+        return run(pool, width, height, MIN_PARALLEL_TILES, columns);
+    }
+
+    /**
+     * @param pool to run in, null to run on the calling thread
+     * @param minParallelTiles run on the calling thread when width * height is less than this
+     * @return sum of all {@link Columns#process(int, int)} results
+     */
+    static int run(ForkJoinPool pool, int width, int height, int minParallelTiles, Columns columns) {
+        if (pool == null || pool.getParallelism() <= 1 || (long) width * height < minParallelTiles) {
+            return columns.process(0, width);
+        }
+        final int grain = Math.max(1, width / (pool.getParallelism() * 8));
+        return pool.invoke(new ColumnTask(columns, 0, width, grain));
+    }
+
+    private static final class ColumnTask extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final Columns columns;
+        private final int fromX, toX;
+        private final int grain;
+
+        private ColumnTask(Columns columns, int fromX, int toX, int grain) {
+            this.columns = columns;
+            this.fromX = fromX;
+            this.toX = toX;
+            this.grain = grain;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (toX - fromX <= grain) {
+                return columns.process(fromX, toX);
+            }
+            final int middle = (fromX + toX) >>> 1;
+            final ColumnTask left = new ColumnTask(columns, fromX, middle, grain);
+            left.fork();
+            final int right = new ColumnTask(columns, middle, toX, grain).compute();
+            return left.join() + right;
+        }
+    }
+}
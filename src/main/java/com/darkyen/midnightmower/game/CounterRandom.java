@@ -0,0 +1,55 @@
+package com.darkyen.midnightmower.game;
+
+/**
+ * Counter based random numbers: each value is a hash of (seed, stream, index), so any value can be computed
+ * on its own, in any order and on any thread, and the result is always the same.
+ *
+ * Streams separate unrelated uses of the same seed, each use should have its own STREAM_ constant.
+ */
+public final class CounterRandom {
+
+    //region Streams
+    public static final long STREAM_POINTS = 1;
+    public static final long STREAM_FILL = 2;
+    public static final long STREAM_PLAYER = 3;
+    public static final long STREAM_GRASS = 4;
+    public static final long STREAM_CHUNK = 5;
+    public static final long STREAM_SWARM = 6;
+    //endregion
+
+    private CounterRandom() {
+    }
+
+    /** SplitMix64 finalizer */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /** @return 64 random bits */
+    public static long bits(long seed, long stream, long index) {
+        return mix(mix(seed ^ (stream * 0xD1B54A32D192ED03L)) + index * 0x9E3779B97F4A7C15L);
+    }
+
+    /** @return random int in [0, bound), bound must be positive */
+    public static int nextInt(long seed, long stream, long index, int bound) {
+        assert bound > 0;
+        return (int) (((bits(seed, stream, index) >>> 32) * bound) >>> 32);
+    }
+
+    /** @return random float in [0, 1) */
+    public static float nextFloat(long seed, long stream, long index) {
+        return (bits(seed, stream, index) >>> 40) * 0x1.0p-24f;
+    }
+
+    /** @return seed of an independent sub-generator, for example for a part of the world */
+    public static long split(long seed, long stream, long index) {
+        return bits(seed, stream, index);
+    }
+
+    /** @return index unique for each x, y pair */
+    public static long tileIndex(int x, int y) {
+        return ((long) x << 32) | (y & 0xFFFF_FFFFL);
+    }
+}
@@ -0,0 +1,264 @@
+package com.darkyen.midnightmower.game;
+
+import com.badlogic.gdx.graphics.Camera;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.LongArray;
+import com.badlogic.gdx.utils.LongMap;
+import com.darkyen.midnightmower.gl.Environment;
+import com.darkyen.midnightmower.gl.Model;
+import com.darkyen.midnightmower.gl.ModelDrawer;
+import com.darkyen.midnightmower.gl.SceneInstance;
+
+/**
+ * Terrain and grass of the loaded chunks of an endless level, kept in the retained scene of an {@link Environment}.
+ *
+ * Instances are added when a chunk is loaded and removed when it is evicted, or when their grass is cut,
+ * as seen in {@link Level#changes}. Culled chunks are hidden. Nothing is done for chunks which did not change.
+ */
+final class EndlessScene {
+
+    private static final int CHUNK_SIZE = EndlessTerrain.CHUNK_SIZE;
+
+    final Level level;
+    private final Environment environment;
+    private final TileJournal.Cursor cursor;
+    private final LongMap<ChunkScene> chunks = new LongMap<>();
+
+    //region Update cache
+    private final LongArray update_removed = new LongArray();
+    /** Chunk coordinates of added and removed chunks, x and y */
+    private final IntArray update_changed = new IntArray();
+    private final Vector3 update_position = new Vector3();
+    //endregion
+
+    /** Handles of instances added by {@link #sceneDrawer} */
+    private final Array<SceneInstance> added = new Array<>(false, 16, SceneInstance.class);
+    private final ModelDrawer sceneDrawer = new ModelDrawer() {
+        @Override
+        public void draw(Model model, Vector3 position) {
+            added.add(environment.add(model, position));
+        }
+
+        @Override
+        public void draw(Model model, Vector3 position, float yDegrees) {
+            added.add(environment.add(model, position, yDegrees));
+        }
+
+        @Override
+        public void draw(Model model, Vector3 position, float yDegrees, float scale) {
+            added.add(environment.add(model, position, yDegrees, scale));
+        }
+    };
+    private final TileJournal.TileConsumer cutGrass = this::cutGrass;
+
+    /** Amount of chunks in the last update */
+    int chunksVisible, chunksTotal;
+
+    EndlessScene(Level level, Environment environment) {
+        if (!level.isEndless()) {
+            throw new IllegalArgumentException("Only endless levels are supported");
+        }
+        this.level = level;
+        this.environment = environment;
+        this.cursor = level.changes.newCursor();
+    }
+
+    private static long chunkKey(int chunkX, int chunkY) {
+        return ((long) chunkX << 32) | (chunkY & 0xFFFF_FFFFL);
+    }
+
+    /** @return index of the grass quadrant in {@link ChunkScene#grass} */
+    private static int grassIndex(int x, int y, int quadrant) {
+        return ((Math.floorMod(x, CHUNK_SIZE) * CHUNK_SIZE + Math.floorMod(y, CHUNK_SIZE)) << 2) | quadrant;
+    }
+
+    /** Follow the loaded chunks, cut grass and culling. */
+    void update(Camera camera, float drawDistance) {
+        // Evicted chunks
+        final LongArray removed = this.update_removed;
+        removed.clear();
+        for (LongMap.Entry<ChunkScene> entry : chunks.entries()) {
+            entry.value.loaded = false;
+        }
+        final IntArray changed = this.update_changed;
+        changed.clear();
+        for (EndlessTerrain.Chunk chunk : level.endless.getLoadedChunks()) {
+            final long key = chunkKey(chunk.chunkX, chunk.chunkY);
+            ChunkScene scene = chunks.get(key);
+            if (scene == null || scene.chunk != chunk) {
+                if (scene != null) {
+                    scene.remove();
+                }
+                scene = new ChunkScene(chunk);
+                chunks.put(key, scene);
+                addGrass(scene);
+                changed.add(chunk.chunkX);
+                changed.add(chunk.chunkY);
+            }
+            scene.loaded = true;
+        }
+        for (LongMap.Entry<ChunkScene> entry : chunks.entries()) {
+            if (!entry.value.loaded) {
+                removed.add(entry.key);
+            }
+        }
+        for (int i = 0; i < removed.size; i++) {
+            final ChunkScene scene = chunks.remove(removed.get(i));
+            scene.remove();
+            changed.add(scene.chunk.chunkX);
+            changed.add(scene.chunk.chunkY);
+        }
+
+        if (changed.size > 0) {
+            // Borders at the edges depend on which neighbor chunks are loaded
+            for (ChunkScene scene : chunks.values()) {
+                for (int i = 0; i < changed.size; i += 2) {
+                    if (Math.abs(changed.get(i) - scene.chunk.chunkX) <= 1 && Math.abs(changed.get(i + 1) - scene.chunk.chunkY) <= 1) {
+                        rebuildTerrain(scene);
+                        break;
+                    }
+                }
+            }
+        }
+
+        if (!level.changes.drain(cursor, cutGrass)) {
+            for (ChunkScene scene : chunks.values()) {
+                final int fromX = scene.chunk.tileX(), fromY = scene.chunk.tileY();
+                for (int x = fromX; x < fromX + CHUNK_SIZE; x++) {
+                    for (int y = fromY; y < fromY + CHUNK_SIZE; y++) {
+                        cutGrass(x, y);
+                    }
+                }
+            }
+        }
+
+        int chunksVisible = 0;
+        for (ChunkScene scene : chunks.values()) {
+            final boolean visible = WorldRenderer.visible(camera, drawDistance, scene.bounds);
+            scene.setVisible(visible);
+            if (visible) {
+                chunksVisible++;
+            }
+        }
+        this.chunksVisible = chunksVisible;
+        this.chunksTotal = chunks.size;
+    }
+
+    private void rebuildTerrain(ChunkScene scene) {
+        for (SceneInstance instance : scene.terrain) {
+            instance.remove();
+        }
+        scene.terrain.clear();
+
+        final Vector3 position = update_position;
+        final int fromX = scene.chunk.tileX(), fromY = scene.chunk.tileY();
+        for (int x = fromX; x < fromX + CHUNK_SIZE; x++) {
+            for (int y = fromY; y < fromY + CHUNK_SIZE; y++) {
+                if (level.traversable(x, y)) {
+                    WorldRenderer.renderGround(sceneDrawer, position, x, y);
+                } else {
+                    WorldRenderer.renderBorder(sceneDrawer, position, x, y, BorderTiles.neighbors(level, x, y));
+                }
+            }
+        }
+        scene.takeAdded(scene.terrain);
+    }
+
+    private void addGrass(ChunkScene scene) {
+        final Vector3 position = update_position;
+        final int fromX = scene.chunk.tileX(), fromY = scene.chunk.tileY();
+        for (int x = fromX; x < fromX + CHUNK_SIZE; x++) {
+            for (int y = fromY; y < fromY + CHUNK_SIZE; y++) {
+                final byte grass = level.grass(x, y);
+                for (int quadrant = 0; quadrant < 4; quadrant++) {
+                    final byte grassBit = (byte) (1 << quadrant);
+                    if ((grass & grassBit) == 0) continue;
+                    WorldRenderer.renderGrass(sceneDrawer, position, x, y, grassBit);
+                    scene.grass[grassIndex(x, y, quadrant)] = added.pop();
+                }
+            }
+        }
+    }
+
+    /** Remove instances of grass which is no longer on the tile. */
+    private void cutGrass(int x, int y) {
+        final ChunkScene scene = chunks.get(chunkKey(Math.floorDiv(x, CHUNK_SIZE), Math.floorDiv(y, CHUNK_SIZE)));
+        if (scene == null) {
+            return;
+        }
+        final byte grass = level.grass(x, y);
+        for (int quadrant = 0; quadrant < 4; quadrant++) {
+            final int index = grassIndex(x, y, quadrant);
+            final SceneInstance instance = scene.grass[index];
+            if (instance != null && (grass & (1 << quadrant)) == 0) {
+                instance.remove();
+                scene.grass[index] = null;
+            }
+        }
+    }
+
+    /** Remove everything from the environment. */
+    void dispose() {
+        for (ChunkScene scene : chunks.values()) {
+            scene.remove();
+        }
+        chunks.clear();
+    }
+
+    private final class ChunkScene {
+        final EndlessTerrain.Chunk chunk;
+        final BoundingBox bounds;
+        final Array<SceneInstance> terrain = new Array<>(false, 64, SceneInstance.class);
+        /** Grass blade of each quadrant, null when there is none, see {@link EndlessScene#grassIndex(int, int, int)} */
+        final SceneInstance[] grass = new SceneInstance[CHUNK_SIZE * CHUNK_SIZE * 4];
+        boolean visible = true;
+        boolean loaded = true;
+
+        ChunkScene(EndlessTerrain.Chunk chunk) {
+            this.chunk = chunk;
+            final int fromX = chunk.tileX(), fromY = chunk.tileY();
+            this.bounds = new BoundingBox(new Vector3(fromX, -1f, fromY),
+                    new Vector3(fromX + CHUNK_SIZE, BakedTerrain.GRASS_HEIGHT, fromY + CHUNK_SIZE));
+        }
+
+        /** Move the {@link #added} instances to the array, with the visibility of this chunk. */
+        void takeAdded(Array<SceneInstance> to) {
+            for (SceneInstance instance : added) {
+                instance.setVisible(visible);
+            }
+            to.addAll(added);
+            added.clear();
+        }
+
+        void setVisible(boolean visible) {
+            if (this.visible == visible) {
+                return;
+            }
+            this.visible = visible;
+            for (SceneInstance instance : terrain) {
+                instance.setVisible(visible);
+            }
+            for (SceneInstance instance : grass) {
+                if (instance != null) {
+                    instance.setVisible(visible);
+                }
+            }
+        }
+
+        void remove() {
+            for (SceneInstance instance : terrain) {
+                instance.remove();
+            }
+            terrain.clear();
+            for (int i = 0; i < grass.length; i++) {
+                if (grass[i] != null) {
+                    grass[i].remove();
+                    grass[i] = null;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.darkyen.midnightmower.game;
+
+import com.badlogic.gdx.utils.LongArray;
+import com.badlogic.gdx.utils.LongMap;
+
+/**
+ * Unbounded terrain of {@link #CHUNK_SIZE}x{@link #CHUNK_SIZE} chunks, generated lazily around the player.
+ *
+ * Each chunk is a function of the level seed and chunk coordinates only, so chunks can be generated in any order.
+ * Chunk contains few Voronoi sites, tile is traversable when its closest site (considering also sites of
+ * neighboring chunks) is traversable, or when it lies on the center row or column of its chunk.
+ * Those always connect to the neighboring chunks, so every chunk is reachable.
+ *
+ * Chunks too far from the player are evicted. Chunk which was not mowed is simply forgotten (it can be generated again),
+ * mowed chunk keeps only its grass nibbles.
+ */
+public final class EndlessTerrain {
+
+    public static final int CHUNK_SIZE = 32;
+    private static final int CHUNK_SHIFT = 5;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int CHUNK_HALF = CHUNK_SIZE / 2;
+
+    /** Chunks within this many chunks from the player's chunk are loaded */
+    public static final int LOAD_RADIUS = 2;
+    /** Chunks further than this many chunks from the player's chunk are evicted */
+    public static final int EVICT_RADIUS = 3;
+
+    private static final int SITES_PER_CHUNK = 6;
+    private static final float SITE_TRAVERSABLE_CHANCE = 0.45f;
+
+    private static final byte TRAVERSABLE = Level.TILE_TRAVERSABLE;
+    private static final byte GRASS_MASK = Level.TILE_GRASS;
+    /** Compact form of a chunk without any grass */
+    private static final byte[] NO_GRASS = new byte[0];
+
+    private final long seed;
+
+    private final LongMap<Chunk> loadedChunks = new LongMap<>();
+    private final LongMap<byte[]> evictedChunks = new LongMap<>();
+    private final LongArray evict_keys = new LongArray();
+
+    private int centerChunkX = Integer.MIN_VALUE, centerChunkY = Integer.MIN_VALUE;
+    private int loadedGrass = 0;
+    private int mowedGrass = 0;
+
+    public EndlessTerrain(long seed) {
+        this.seed = seed;
+    }
+
+    private static long chunkKey(int chunkX, int chunkY) {
+        return ((long) chunkX << 32) | (chunkY & 0xFFFF_FFFFL);
+    }
+
+    private long chunkSeed(int chunkX, int chunkY) {
+        return CounterRandom.split(seed, CounterRandom.STREAM_CHUNK, chunkKey(chunkX, chunkY));
+    }
+
+    /** Load chunks around given tile and evict those that are too far. Cheap when the chunk of the tile did not change. */
+    public void update(int tileX, int tileY) {
+        final int chunkX = tileX >> CHUNK_SHIFT;
+        final int chunkY = tileY >> CHUNK_SHIFT;
+        if (chunkX == centerChunkX && chunkY == centerChunkY) {
+            return;
+        }
+        centerChunkX = chunkX;
+        centerChunkY = chunkY;
+
+        final LongArray evictKeys = this.evict_keys;
+        evictKeys.clear();
+        for (LongMap.Entry<Chunk> entry : loadedChunks.entries()) {
+            final Chunk chunk = entry.value;
+            if (Math.abs(chunk.chunkX - chunkX) > EVICT_RADIUS || Math.abs(chunk.chunkY - chunkY) > EVICT_RADIUS) {
+                evictKeys.add(entry.key);
+            }
+        }
+        for (int i = 0; i < evictKeys.size; i++) {
+            evict(loadedChunks.remove(evictKeys.get(i)));
+        }
+
+        for (int x = chunkX - LOAD_RADIUS; x <= chunkX + LOAD_RADIUS; x++) {
+            for (int y = chunkY - LOAD_RADIUS; y <= chunkY + LOAD_RADIUS; y++) {
+                final long key = chunkKey(x, y);
+                if (!loadedChunks.containsKey(key)) {
+                    loadedChunks.put(key, load(x, y));
+                }
+            }
+        }
+    }
+
+    private Chunk load(int chunkX, int chunkY) {
+        final Chunk chunk = new Chunk(chunkX, chunkY);
+        generate(chunk);
+
+        final byte[] compact = evictedChunks.remove(chunkKey(chunkX, chunkY));
+        if (compact != null) {
+            chunk.modified = true;
+            chunk.grass = 0;
+            final byte[] tiles = chunk.tiles;
+            for (int i = 0; i < tiles.length; i++) {
+                final int grass = compact == NO_GRASS ? 0 : (compact[i >>> 1] >>> ((i & 1) << 2)) & GRASS_MASK;
+                tiles[i] = (byte) ((tiles[i] & TRAVERSABLE) | grass);
+                chunk.grass += Integer.bitCount(grass);
+            }
+        }
+
+        loadedGrass += chunk.grass;
+        return chunk;
+    }
+
+    private void evict(Chunk chunk) {
+        loadedGrass -= chunk.grass;
+        if (!chunk.modified) {
+            return;
+        }
+
+        final byte[] compact;
+        if (chunk.grass == 0) {
+            compact = NO_GRASS;
+        } else {
+            final byte[] tiles = chunk.tiles;
+            compact = new byte[tiles.length / 2];
+            for (int i = 0; i < tiles.length; i++) {
+                compact[i >>> 1] |= (tiles[i] & GRASS_MASK) << ((i & 1) << 2);
+            }
+        }
+        evictedChunks.put(chunkKey(chunk.chunkX, chunk.chunkY), compact);
+    }
+
+    /** Sites of chunk, as x, y in tiles (global) and traversable flag, three ints per site. */
+    private void chunkSites(int chunkX, int chunkY, int[] out, int outOffset) {
+        final long chunkSeed = chunkSeed(chunkX, chunkY);
+        for (int i = 0; i < SITES_PER_CHUNK; i++) {
+            final long state = CounterRandom.bits(chunkSeed, CounterRandom.STREAM_POINTS, i);
+            out[outOffset++] = (chunkX << CHUNK_SHIFT) + (int) (state & CHUNK_MASK);
+            out[outOffset++] = (chunkY << CHUNK_SHIFT) + (int) ((state >>> CHUNK_SHIFT) & CHUNK_MASK);
+            out[outOffset++] = ((state >>> 40) & 0xFFFF) < SITE_TRAVERSABLE_CHANCE * 0x10000 ? 1 : 0;
+        }
+    }
+
+    private final int[] generate_sites = new int[9 * SITES_PER_CHUNK * 3];
+
+    private void generate(Chunk chunk) {
+        final int[] sites = this.generate_sites;
+        int siteOffset = 0;
+        for (int x = -1; x <= 1; x++) {
+            for (int y = -1; y <= 1; y++) {
+                chunkSites(chunk.chunkX + x, chunk.chunkY + y, sites, siteOffset);
+                siteOffset += SITES_PER_CHUNK * 3;
+            }
+        }
+
+        final byte[] tiles = chunk.tiles;
+        int grassCount = 0;
+        for (int localX = 0; localX < CHUNK_SIZE; localX++) {
+            final int x = (chunk.chunkX << CHUNK_SHIFT) + localX;
+            for (int localY = 0; localY < CHUNK_SIZE; localY++) {
+                final int y = (chunk.chunkY << CHUNK_SHIFT) + localY;
+
+                boolean traversable = localX == CHUNK_HALF || localY == CHUNK_HALF;
+                if (!traversable) {
+                    int closestDistance2 = Integer.MAX_VALUE;
+                    for (int i = 0; i < sites.length; i += 3) {
+                        final int dX = sites[i] - x;
+                        final int dY = sites[i + 1] - y;
+                        final int dist2 = dX * dX + dY * dY;
+                        if (dist2 < closestDistance2) {
+                            closestDistance2 = dist2;
+                            traversable = sites[i + 2] != 0;
+                        }
+                    }
+                }
+
+                if (traversable) {
+                    final byte grass = Level.initialGrass(seed, x, y);
+                    tiles[localX * CHUNK_SIZE + localY] = (byte) (TRAVERSABLE | grass);
+                    grassCount += Integer.bitCount(grass);
+                }
+            }
+        }
+        chunk.grass = grassCount;
+    }
+
+    private Chunk chunkOf(int x, int y) {
+        return loadedChunks.get(chunkKey(x >> CHUNK_SHIFT, y >> CHUNK_SHIFT));
+    }
+
+    /** @return packed tile as in {@link Level#tile(int, int)}, 0 for tiles in chunks which are not loaded */
+    public byte tile(int x, int y) {
+        final Chunk chunk = chunkOf(x, y);
+        return chunk == null ? 0 : chunk.tiles[(x & CHUNK_MASK) * CHUNK_SIZE + (y & CHUNK_MASK)];
+    }
+
+    /** @return whether the tile is traversable, false for tiles in chunks which are not loaded */
+    public boolean traversable(int x, int y) {
+        final Chunk chunk = chunkOf(x, y);
+        return chunk != null && (chunk.tiles[(x & CHUNK_MASK) * CHUNK_SIZE + (y & CHUNK_MASK)] & TRAVERSABLE) != 0;
+    }
+
+    /** @return grass bits of the tile, 0 for tiles in chunks which are not loaded */
+    public byte grass(int x, int y) {
+        final Chunk chunk = chunkOf(x, y);
+        return chunk == null ? 0 : (byte) (chunk.tiles[(x & CHUNK_MASK) * CHUNK_SIZE + (y & CHUNK_MASK)] & GRASS_MASK);
+    }
+
+    /** @return true if there was grass on the tile and it was cut */
+    public boolean cutGrass(int x, int y, byte grassBit) {
+        final Chunk chunk = chunkOf(x, y);
+        if (chunk == null) return false;
+        final int index = (x & CHUNK_MASK) * CHUNK_SIZE + (y & CHUNK_MASK);
+        if ((chunk.tiles[index] & grassBit) == 0) return false;
+
+        chunk.tiles[index] &= ~grassBit;
+        chunk.grass--;
+        chunk.modified = true;
+        loadedGrass--;
+        mowedGrass++;
+        return true;
+    }
+
+    /** @return amount of grass in loaded chunks */
+    public int getLoadedGrass() {
+        return loadedGrass;
+    }
+
+    /** @return amount of grass mowed in total */
+    public int getMowedGrass() {
+        return mowedGrass;
+    }
+
+    public Iterable<Chunk> getLoadedChunks() {
+        return loadedChunks.values();
+    }
+
+    public static final class Chunk {
+        public final int chunkX, chunkY;
+        /** Traversable bit and grass bits of each tile, local x * CHUNK_SIZE + local y */
+        private final byte[] tiles = new byte[CHUNK_SIZE * CHUNK_SIZE];
+        private int grass;
+        private boolean modified = false;
+
+        private Chunk(int chunkX, int chunkY) {
+            this.chunkX = chunkX;
+            this.chunkY = chunkY;
+        }
+
+        /** @return x of the first tile of this chunk */
+        public int tileX() {
+            return chunkX << CHUNK_SHIFT;
+        }
+
+        /** @return y of the first tile of this chunk */
+        public int tileY() {
+            return chunkY << CHUNK_SHIFT;
+        }
+
+        /** @return amount of grass in this chunk */
+        public int getGrass() {
+            return grass;
+        }
+    }
+}
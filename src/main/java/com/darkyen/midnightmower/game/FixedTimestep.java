@@ -0,0 +1,45 @@
+package com.darkyen.midnightmower.game;
+
+/**
+ * Converts variable frame time into a number of fixed simulation ticks.
+ * Time which does not add up to a whole tick is carried over to the next frame.
+ */
+public final class FixedTimestep {
+
+    /** Duration of one tick, in seconds */
+    public final float tick;
+    /** At most this many ticks are simulated per frame, time over that is dropped, so that slow frames don't pile up */
+    public final int maxTicksPerFrame;
+
+    private float accumulator = 0f;
+
+    public FixedTimestep(float tick, int maxTicksPerFrame) {
+        this.tick = tick;
+        this.maxTicksPerFrame = maxTicksPerFrame;
+    }
+
+    /** @return how many ticks to simulate for a frame which took delta seconds */
+    public int advance(float delta) {
+        accumulator += delta;
+        int ticks = 0;
+        while (accumulator >= tick) {
+            accumulator -= tick;
+            if (++ticks == maxTicksPerFrame) {
+                if (accumulator >= tick) {
+                    accumulator %= tick;
+                }
+                break;
+            }
+        }
+        return ticks;
+    }
+
+    /** @return how far into the next tick the current time is, [0, 1) */
+    public float alpha() {
+        return accumulator / tick;
+    }
+
+    public void reset() {
+        accumulator = 0f;
+    }
+}
@@ -0,0 +1,256 @@
+package com.darkyen.midnightmower.game;
+
+import com.badlogic.gdx.math.Vector2;
+
+/**
+ * Grass of a fixed size level as bitboards, for counting remaining grass in an area and finding the nearest grass
+ * without visiting each tile.
+ *
+ * Each 64-bit word holds grass bits of a {@link #BLOCK_SIZE}x{@link #BLOCK_SIZE} block of tiles, one nibble per tile
+ * (nibble index local x * BLOCK_SIZE + local y). Above the blocks is a pyramid of grass counts: each cell of pyramid
+ * level n covers 2x2 cells of level n - 1, level 0 being the blocks themselves, up to a single cell over the whole level.
+ * Cutting updates one cell per level and queries descend only into cells which intersect the area and have grass.
+ * Cells of level {@link #CHUNK_LEVEL} are the {@link #CHUNK_SIZE}x{@link #CHUNK_SIZE} tile chunks.
+ */
+public final class GrassBoard {
+
+    public static final int BLOCK_SIZE = 4;
+    private static final int BLOCK_SHIFT = 2;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+
+    public static final int CHUNK_SIZE = 16;
+    private static final int CHUNK_LEVEL = 2;
+
+    public final int width, height;
+    /** Amount of chunks in each direction, last chunks may be only partially in the level */
+    public final int chunksX, chunksY;
+
+    /** Grass nibbles, index blockX * levelHeight[0] + blockY */
+    private final long[] blocks;
+    /** Size of each pyramid level in cells */
+    private final int[] levelWidth, levelHeight;
+    /** Grass count of each cell of each pyramid level, index cellX * levelHeight[level] + cellY, null for level 0 */
+    private final int[][] levelGrass;
+    private final int topLevel;
+
+    //region Nearest grass search state
+    private float searchX, searchY;
+    private float nearestDistance2;
+    private float nearestX, nearestY;
+    //endregion
+
+    private GrassBoard(int width, int height) {
+        this.width = width;
+        this.height = height;
+
+        int levels = 1;
+        for (int w = (width + BLOCK_MASK) >> BLOCK_SHIFT, h = (height + BLOCK_MASK) >> BLOCK_SHIFT;
+             w > 1 || h > 1 || levels <= CHUNK_LEVEL; w = (w + 1) >> 1, h = (h + 1) >> 1) {
+            levels++;
+        }
+        topLevel = levels - 1;
+        levelWidth = new int[levels];
+        levelHeight = new int[levels];
+        levelGrass = new int[levels][];
+        levelWidth[0] = (width + BLOCK_MASK) >> BLOCK_SHIFT;
+        levelHeight[0] = (height + BLOCK_MASK) >> BLOCK_SHIFT;
+        for (int level = 1; level < levels; level++) {
+            levelWidth[level] = (levelWidth[level - 1] + 1) >> 1;
+            levelHeight[level] = (levelHeight[level - 1] + 1) >> 1;
+            levelGrass[level] = new int[levelWidth[level] * levelHeight[level]];
+        }
+        this.blocks = new long[levelWidth[0] * levelHeight[0]];
+        this.chunksX = levelWidth[CHUNK_LEVEL];
+        this.chunksY = levelHeight[CHUNK_LEVEL];
+    }
+
+    /** @param tiles packed level tiles, as in {@link Level}, index x * height + y */
+    static GrassBoard of(byte[] tiles, int width, int height) {
+        final GrassBoard board = new GrassBoard(width, height);
+        final long[] blocks = board.blocks;
+        final int[] levelGrass = board.levelGrass[1];
+        int tile = 0;
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++, tile++) {
+                final int grass = tiles[tile] & Level.TILE_GRASS;
+                if (grass == 0) continue;
+                blocks[board.blockIndex(x, y)] |= (long) grass << nibbleShift(x, y);
+                levelGrass[board.cellIndex(1, x >> (BLOCK_SHIFT + 1), y >> (BLOCK_SHIFT + 1))] += Integer.bitCount(grass);
+            }
+        }
+        for (int level = 2; level <= board.topLevel; level++) {
+            final int[] below = board.levelGrass[level - 1];
+            final int[] grass = board.levelGrass[level];
+            final int belowWidth = board.levelWidth[level - 1], belowHeight = board.levelHeight[level - 1];
+            for (int cellX = 0; cellX < belowWidth; cellX++) {
+                for (int cellY = 0; cellY < belowHeight; cellY++) {
+                    grass[board.cellIndex(level, cellX >> 1, cellY >> 1)] += below[cellX * belowHeight + cellY];
+                }
+            }
+        }
+        return board;
+    }
+
+    private int blockIndex(int x, int y) {
+        return (x >> BLOCK_SHIFT) * levelHeight[0] + (y >> BLOCK_SHIFT);
+    }
+
+    private static int nibbleShift(int x, int y) {
+        return (((x & BLOCK_MASK) << BLOCK_SHIFT) | (y & BLOCK_MASK)) << 2;
+    }
+
+    private int cellIndex(int level, int cellX, int cellY) {
+        return cellX * levelHeight[level] + cellY;
+    }
+
+    /** @return grass bits of the tile, tile must be in the level */
+    public byte grass(int x, int y) {
+        return (byte) ((blocks[blockIndex(x, y)] >>> nibbleShift(x, y)) & Level.TILE_GRASS);
+    }
+
+    /** Remove grass bit of a tile in the level. @return true if the grass was there */
+    public boolean cut(int x, int y, byte grassBit) {
+        final int blockIndex = blockIndex(x, y);
+        final long bit = (long) grassBit << nibbleShift(x, y);
+        if ((blocks[blockIndex] & bit) == 0) {
+            return false;
+        }
+        blocks[blockIndex] &= ~bit;
+        for (int level = 1; level <= topLevel; level++) {
+            final int shift = level + BLOCK_SHIFT;
+            levelGrass[level][cellIndex(level, x >> shift, y >> shift)]--;
+        }
+        return true;
+    }
+
+    /** @return amount of grass in the whole level */
+    public int getGrass() {
+        return levelGrass[topLevel][0];
+    }
+
+    /** @return amount of grass in the chunk, chunk must be in [0, chunksX) x [0, chunksY) */
+    public int getChunkGrass(int chunkX, int chunkY) {
+        return levelGrass[CHUNK_LEVEL][cellIndex(CHUNK_LEVEL, chunkX, chunkY)];
+    }
+
+    /** @return amount of grass of tiles in [fromX, toX) x [fromY, toY), the area is clamped to the level */
+    public int getGrass(int fromX, int fromY, int toX, int toY) {
+        fromX = Math.max(fromX, 0);
+        fromY = Math.max(fromY, 0);
+        toX = Math.min(toX, width);
+        toY = Math.min(toY, height);
+        if (fromX >= toX || fromY >= toY) {
+            return 0;
+        }
+        return cellGrass(topLevel, 0, 0, fromX, fromY, toX, toY);
+    }
+
+    /** Count grass of the cell in the area, which is inside the level. */
+    private int cellGrass(int level, int cellX, int cellY, int fromX, int fromY, int toX, int toY) {
+        final int shift = level + BLOCK_SHIFT;
+        final int cellFromX = cellX << shift, cellFromY = cellY << shift;
+        final int cellToX = cellFromX + (1 << shift), cellToY = cellFromY + (1 << shift);
+        if (cellToX <= fromX || cellFromX >= toX || cellToY <= fromY || cellFromY >= toY) {
+            return 0;
+        }
+        final boolean inside = fromX <= cellFromX && cellToX <= toX && fromY <= cellFromY && cellToY <= toY;
+
+        if (level == 0) {
+            final long block = blocks[cellIndex(0, cellX, cellY)];
+            if (block == 0L || inside) {
+                return Long.bitCount(block);
+            }
+            final int localFromX = Math.max(fromX - cellFromX, 0);
+            final int localToX = Math.min(toX - cellFromX, BLOCK_SIZE);
+            final int localFromY = Math.max(fromY - cellFromY, 0);
+            final int localToY = Math.min(toY - cellFromY, BLOCK_SIZE);
+            // Nibbles of one local column, then repeated for each column of the area
+            final long columnMask = ((1L << ((localToY - localFromY) << 2)) - 1L) << (localFromY << 2);
+            long mask = 0L;
+            for (int localX = localFromX; localX < localToX; localX++) {
+                mask |= columnMask << (localX << (BLOCK_SHIFT + 2));
+            }
+            return Long.bitCount(block & mask);
+        }
+
+        final int grass = levelGrass[level][cellIndex(level, cellX, cellY)];
+        if (grass == 0 || inside) {
+            return grass;
+        }
+        final int childLevel = level - 1;
+        final int childToX = Math.min((cellX << 1) + 2, levelWidth[childLevel]);
+        final int childToY = Math.min((cellY << 1) + 2, levelHeight[childLevel]);
+        int result = 0;
+        for (int childX = cellX << 1; childX < childToX; childX++) {
+            for (int childY = cellY << 1; childY < childToY; childY++) {
+                result += cellGrass(childLevel, childX, childY, fromX, fromY, toX, toY);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Find the center of the grass quadrant nearest to the point. Not thread safe.
+     * @param out set to the center of the nearest quadrant with grass, if there is any
+     * @return false if there is no grass left
+     */
+    public boolean findNearestGrass(float x, float y, Vector2 out) {
+        if (getGrass() == 0) {
+            return false;
+        }
+        searchX = x;
+        searchY = y;
+        nearestDistance2 = Float.POSITIVE_INFINITY;
+        searchNearest(topLevel, 0, 0);
+        out.set(nearestX, nearestY);
+        return true;
+    }
+
+    /** @return squared distance from the search point to the nearest point of the cell */
+    private float cellDistance2(int level, int cellX, int cellY) {
+        final int shift = level + BLOCK_SHIFT;
+        final float fromX = cellX << shift, fromY = cellY << shift;
+        final float size = 1 << shift;
+        final float dx = Math.max(Math.max(fromX - searchX, searchX - (fromX + size)), 0f);
+        final float dy = Math.max(Math.max(fromY - searchY, searchY - (fromY + size)), 0f);
+        return dx * dx + dy * dy;
+    }
+
+    private void searchNearest(int level, int cellX, int cellY) {
+        if (level == 0) {
+            long block = blocks[cellIndex(0, cellX, cellY)];
+            while (block != 0L) {
+                final int bit = Long.numberOfTrailingZeros(block);
+                block &= block - 1L;
+                // Bit 0 of the quadrant is the x half (GRASS_10), bit 1 the y half (GRASS_01)
+                final int nibble = bit >> 2;
+                final int quadrant = bit & 3;
+                final float grassX = (cellX << BLOCK_SHIFT) + (nibble >> BLOCK_SHIFT) + 0.25f + (quadrant & 1) * 0.5f;
+                final float grassY = (cellY << BLOCK_SHIFT) + (nibble & BLOCK_MASK) + 0.25f + (quadrant >> 1) * 0.5f;
+                final float dx = grassX - searchX, dy = grassY - searchY;
+                final float distance2 = dx * dx + dy * dy;
+                if (distance2 < nearestDistance2) {
+                    nearestDistance2 = distance2;
+                    nearestX = grassX;
+                    nearestY = grassY;
+                }
+            }
+            return;
+        }
+
+        // Child on the side of the search point first, the diagonal one last, to prune more
+        final int childLevel = level - 1;
+        final int childShift = childLevel + BLOCK_SHIFT;
+        final int baseX = cellX << 1, baseY = cellY << 1;
+        final int nearX = searchX >= (baseX + 1) << childShift ? 1 : 0;
+        final int nearY = searchY >= (baseY + 1) << childShift ? 1 : 0;
+        for (int i = 0; i < 4; i++) {
+            final int childX = baseX + (nearX ^ (i & 1));
+            final int childY = baseY + (nearY ^ (i >> 1));
+            if (childX >= levelWidth[childLevel] || childY >= levelHeight[childLevel]) continue;
+            if (childLevel > 0 && levelGrass[childLevel][cellIndex(childLevel, childX, childY)] == 0) continue;
+            if (cellDistance2(childLevel, childX, childY) >= nearestDistance2) continue;
+            searchNearest(childLevel, childX, childY);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.darkyen.midnightmower.game;
+
+import com.badlogic.gdx.utils.BufferUtils;
+import com.badlogic.gdx.utils.Disposable;
+import com.darkyen.midnightmower.gl.Model;
+import com.darkyen.midnightmower.gl.Shader;
+import com.darkyen.midnightmower.gl.Texture;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Grass blades of a fixed size level, placed by the vertex shader (grass-vert.glsl) from the instance index,
+ * one instance per grass quadrant, so nothing is computed per blade on the CPU.
+ *
+ * The shader reads the grass bits from a texture which mirrors the level, texel (y, x) holds the bits of tile x, y,
+ * so that texels are in the same order as tiles. Cut grass is updated from {@link Level#changes}, one texel per change.
+ */
+public final class GrassField implements Disposable {
+
+    public final Level level;
+    private final Texture texture;
+    private final TileJournal.Cursor cursor;
+    private final ByteBuffer texels;
+    private final TileJournal.TileConsumer updateTexel = this::updateTexel;
+
+    public GrassField(Level level) {
+        if (level.isEndless()) {
+            throw new IllegalArgumentException("Endless levels are not supported");
+        }
+        this.level = level;
+        // Before the tiles are read, so that no cut is missed
+        this.cursor = level.changes.newCursor();
+        this.texels = BufferUtils.newByteBuffer(level.width * level.height);
+        this.texture = new Texture();
+        fillTexels();
+        texture.loadBytes(level.height, level.width, texels);
+    }
+
+    private void fillTexels() {
+        final Level level = this.level;
+        final ByteBuffer texels = this.texels;
+        texels.clear();
+        final int tiles = level.width * level.height;
+        for (int i = 0; i < tiles; i++) {
+            texels.put((byte) (level.tile(i) & Level.TILE_GRASS));
+        }
+        texels.flip();
+    }
+
+    private void updateTexel(int x, int y) {
+        texels.clear();
+        texels.put(level.grass(x, y)).flip();
+        texture.updateBytes(y, x, 1, 1, texels);
+    }
+
+    /** Bring the texture up to date with the grass of the level. */
+    private void update() {
+        texture.bind(0);
+        if (!level.changes.drain(cursor, updateTexel)) {
+            fillTexels();
+            texture.updateBytes(0, 0, level.height, level.width, texels);
+        }
+    }
+
+    /**
+     * Draw grass of tiles in [fromX, toX) x [fromY, toY), one instanced draw per grass model.
+     * @param shader grass-vert.glsl shader, bound
+     * @param models picked by the same hash as in the shader
+     */
+    public void draw(Shader shader, Model[] models, int fromX, int fromY, int toX, int toY) {
+        if (fromX >= toX || fromY >= toY) {
+            return;
+        }
+        update();
+
+        shader.uniform("grass").set(0);
+        shader.uniform("grassOrigin").set(fromX, fromY);
+        shader.uniform("grassColumn").set(toY - fromY);
+        shader.uniform("grassModelCount").set(models.length);
+        final int instances = (toX - fromX) * (toY - fromY) * 4;
+        for (int i = 0; i < models.length; i++) {
+            shader.uniform("grassModel").set(i);
+            models[i].drawProcedural(shader, instances);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        texture.dispose();
+    }
+}
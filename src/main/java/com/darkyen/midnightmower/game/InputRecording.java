@@ -0,0 +1,174 @@
+package com.darkyen.midnightmower.game;
+
+import com.badlogic.gdx.utils.ByteArray;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Per-tick {@link Simulation} input of one play session, with the level it was played on.
+ * Simulation is deterministic, so replaying the input on the same level plays the same session again.
+ *
+ * Input is stored as runs of ticks with the same input bits: varint run length, then one byte of input.
+ *
+ * File format (big endian):
+ * <pre>
+ * int magic, int version
+ * int order, long seed, boolean endless
+ * long ticks, int runBytes, runs
+ * </pre>
+ */
+public final class InputRecording {
+
+    private static final int MAGIC = 0x4D4D4952;// MMIR
+    private static final int VERSION = 1;
+
+    public final int order;
+    public final long seed;
+    public final boolean endless;
+
+    private final ByteArray runs = new ByteArray();
+    private long ticks = 0;
+
+    private int runInput = 0;
+    private int runLength = 0;
+
+    private InputRecording(int order, long seed, boolean endless) {
+        this.order = order;
+        this.seed = seed;
+        this.endless = endless;
+    }
+
+    /** @param level to record on, should not have been played yet */
+    public static InputRecording of(Level level) {
+        return new InputRecording(level.order, level.seed, level.isEndless());
+    }
+
+    /** @return new instance of the level this was recorded on */
+    public Level createLevel(LevelCache levelCache) {
+        return endless ? Level.endless(seed) : levelCache.get(order, seed);
+    }
+
+    /** Append input of the next tick. */
+    public void record(int input) {
+        if (input != runInput) {
+            flush();
+            runInput = input;
+        }
+        runLength++;
+        ticks++;
+    }
+
+    private void flush() {
+        if (runLength == 0) {
+            return;
+        }
+        int length = runLength;
+        while ((length & ~0x7F) != 0) {
+            runs.add((byte) ((length & 0x7F) | 0x80));
+            length >>>= 7;
+        }
+        runs.add((byte) length);
+        runs.add((byte) runInput);
+        runLength = 0;
+    }
+
+    /** @return amount of recorded ticks */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /** @return new input source which plays all ticks recorded so far */
+    public Replay replay() {
+        flush();
+        return new Replay(runs.toArray(), ticks);
+    }
+
+    public void save(File file) throws IOException {
+        flush();
+        final File directory = file.getAbsoluteFile().getParentFile();
+        if (directory != null) {
+            Files.createDirectories(directory.toPath());
+        }
+        final File temporary = File.createTempFile("recording-", ".tmp", directory);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(order);
+                out.writeLong(seed);
+                out.writeBoolean(endless);
+                out.writeLong(ticks);
+                out.writeInt(runs.size);
+                out.write(runs.items, 0, runs.size);
+            }
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary.toPath());
+        }
+    }
+
+    /** @return loaded recording or null if the file is not a valid recording */
+    public static InputRecording load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            final InputRecording recording = new InputRecording(in.readInt(), in.readLong(), in.readBoolean());
+            recording.ticks = in.readLong();
+            final int runBytes = in.readInt();
+            if (recording.ticks < 0 || runBytes < 0) {
+                return null;
+            }
+            final byte[] runs = recording.runs.ensureCapacity(runBytes);
+            in.readFully(runs, 0, runBytes);
+            recording.runs.size = runBytes;
+            return recording;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /** Plays back the recorded input, one tick per {@link #input(Simulation)} call, then no input. */
+    public static final class Replay implements Simulation.InputSource {
+        private final byte[] runs;
+        private final long ticks;
+        private int position = 0;
+        private int runInput = 0;
+        private int runRemaining = 0;
+        private long tick = 0;
+
+        private Replay(byte[] runs, long ticks) {
+            this.runs = runs;
+            this.ticks = ticks;
+        }
+
+        @Override
+        public int input(Simulation simulation) {
+            while (runRemaining == 0) {
+                if (position >= runs.length) {
+                    return 0;
+                }
+                int length = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = runs[position++];
+                    length |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                runRemaining = length;
+                runInput = runs[position++];
+            }
+            runRemaining--;
+            tick++;
+            return runInput;
+        }
+
+        /** @return true when all recorded ticks have been played */
+        public boolean isFinished() {
+            return tick >= ticks;
+        }
+    }
+}
@@ -1,8 +1,9 @@
 package com.darkyen.midnightmower.game;
 
-import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Vector2;
 
+import java.util.concurrent.ForkJoinPool;
+
 /**
  *
  */
@@ -12,12 +13,27 @@ public final class Level {
     public final static byte GRASS_10 = 1<<1;
     public final static byte GRASS_01 = 1<<2;
     public final static byte GRASS_11 = 1<<3;
+    /** Mask of all grass bits of a tile */
+    public final static byte TILE_GRASS = GRASS_00 | GRASS_10 | GRASS_01 | GRASS_11;
+    public final static byte TILE_TRAVERSABLE = 1<<4;
 
     public final int order;
+    public final long seed;
     public final int width, height;
-    public final boolean[][] tileTraversable;
-    public final byte[][] tileGrass;
+    /** Grass bits and {@link #TILE_TRAVERSABLE} of each tile, index from {@link #tileIndex(int, int)}. */
+    private final byte[] tiles;
+    /** Grass of the tiles for counting by area, null for endless levels */
+    public final GrassBoard grassBoard;
+    /** Non traversable tiles next to traversable ones, null for endless levels */
+    public final BorderTiles borders;
+    /** Tiles whose grass has been cut */
+    public final TileJournal changes = new TileJournal(1024);
     public int remainingGrass = 0;
+    /** Not null if this level is endless, tiles are then null and width and height span only
+     * the starting chunk. Otherwise null. */
+    public final EndlessTerrain endless;
+    /** Extra mowers driving on this level, null if none. Not part of {@link InputRecording}. */
+    public MowerSwarm swarm = null;
 
     public final Vector2 playerPos = new Vector2();
     public int playerTileX, playerTileY;
@@ -25,35 +41,130 @@ public final class Level {
     public float playerSpeed = 0.7f;
     public float playerRotationSpeed = 45f;
 
+    /** Player position and angle to render, between the state before and after the last simulation tick */
+    public final Vector2 renderPlayerPos = new Vector2();
+    public float renderPlayerAngle;
+    private final Vector2 previousPlayerPos = new Vector2();
+    private float previousPlayerAngle;
+
     public Level(int order, long seed) {
+        this(order, seed, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool to parallelize the generation in, null to generate on the calling thread.
+     *             The level is the same regardless.
+     */
+    public Level(int order, long seed, ForkJoinPool pool) {
         this.order = order;
-        final LevelGenerator.LevelData levelData = LevelGenerator.generateLevel(5 + order * 20, seed);
+        this.seed = seed;
+        this.endless = null;
+        final LevelGenerator.LevelData levelData = LevelGenerator.generateLevel(LevelGenerator.filledTilesForOrder(order), seed, pool);
         this.width = levelData.width;
         this.height = levelData.height;
         this.playerTileX = levelData.playerX;
         this.playerTileY = levelData.playerY;
         this.playerPos.set(levelData.playerX + 0.5f, levelData.playerY + 0.5f);
         this.playerAngle = levelData.playerAngle;
-        this.tileTraversable = levelData.filled;
-        this.tileGrass = new byte[width][height];
-
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                if (tileTraversable[x][y]) {
-                    byte grass = tileGrass[x][y] = (byte) (MathUtils.random.nextInt(1<<4) | MathUtils.random.nextInt(1<<4));
-                    for (int i = 0; i < 4; i++) {
-                        if ((grass & (1 << i)) != 0) {
-                            remainingGrass++;
-                        }
+        final byte[] tiles = this.tiles = levelData.tiles;
+
+        final int height = this.height;
+        remainingGrass = ColumnWork.run(pool, width, height, (fromX, toX) -> {
+            int grassCount = 0;
+            int tile = fromX * height;
+            for (int x = fromX; x < toX; x++) {
+                for (int y = 0; y < height; y++, tile++) {
+                    if ((tiles[tile] & TILE_TRAVERSABLE) != 0) {
+                        final byte grass = initialGrass(seed, x, y);
+                        tiles[tile] |= grass;
+                        grassCount += Integer.bitCount(grass);
                     }
                 }
             }
+            return grassCount;
+        });
+        this.grassBoard = GrassBoard.of(tiles, width, height);
+        this.borders = BorderTiles.of(this);
+        snapRenderPlayer();
+    }
+
+    /** Level with already generated content, used by {@link LevelCache}. */
+    Level(int order, long seed, int width, int height, byte[] tiles, int remainingGrass,
+          int playerTileX, int playerTileY, float playerAngle) {
+        this.order = order;
+        this.seed = seed;
+        this.width = width;
+        this.height = height;
+        this.tiles = tiles;
+        this.grassBoard = GrassBoard.of(tiles, width, height);
+        this.borders = BorderTiles.of(this);
+        this.remainingGrass = remainingGrass;
+        this.endless = null;
+        this.playerTileX = playerTileX;
+        this.playerTileY = playerTileY;
+        this.playerPos.set(playerTileX + 0.5f, playerTileY + 0.5f);
+        this.playerAngle = playerAngle;
+        snapRenderPlayer();
+    }
+
+    private Level(long seed, EndlessTerrain endless) {
+        this.order = 0;
+        this.seed = seed;
+        this.width = EndlessTerrain.CHUNK_SIZE;
+        this.height = EndlessTerrain.CHUNK_SIZE;
+        this.tiles = null;
+        this.grassBoard = null;
+        this.borders = null;
+        this.endless = endless;
+        // Center of the starting chunk is always traversable
+        this.playerTileX = EndlessTerrain.CHUNK_SIZE / 2;
+        this.playerTileY = EndlessTerrain.CHUNK_SIZE / 2;
+        this.playerPos.set(playerTileX + 0.5f, playerTileY + 0.5f);
+        this.playerAngle = 0f;
+        endless.update(playerTileX, playerTileY);
+        this.remainingGrass = endless.getLoadedGrass();
+        snapRenderPlayer();
+    }
+
+    /** Create a level without bounds, whose terrain is generated as the player moves. It can't be completed. */
+    public static Level endless(long seed) {
+        return new Level(seed, new EndlessTerrain(seed));
+    }
+
+    public boolean isEndless() {
+        return endless != null;
+    }
+
+    /** Each quadrant has grass with 3/4 probability, depends only on the seed and tile, so tiles can be filled in any order. */
+    static byte initialGrass(long seed, int x, int y) {
+        final long hash = CounterRandom.bits(seed, CounterRandom.STREAM_GRASS, CounterRandom.tileIndex(x, y));
+        return (byte) ((hash & 0xF) | ((hash >>> 4) & 0xF));
+    }
+
+    /** Remember the player state before a simulation tick, for {@link #interpolateRenderPlayer(float)}. */
+    public void beginTick() {
+        previousPlayerPos.set(playerPos);
+        previousPlayerAngle = playerAngle;
+    }
+
+    /** @param alpha 0 to render the player as before the last tick, 1 as after it */
+    public void interpolateRenderPlayer(float alpha) {
+        renderPlayerPos.set(previousPlayerPos).lerp(playerPos, alpha);
+        renderPlayerAngle = previousPlayerAngle + (playerAngle - previousPlayerAngle) * alpha;
+        if (swarm != null) {
+            swarm.renderAlpha = alpha;
         }
     }
 
+    /** Render the player exactly as it is now, without interpolation. */
+    public void snapRenderPlayer() {
+        beginTick();
+        interpolateRenderPlayer(1f);
+    }
+
     // Code lifted from my DDA voxel/pixel tracer
 
-    private float deltaToCross(float currentPos, int currentTile, int raySign) {
+    private static float deltaToCross(float currentPos, int currentTile, int raySign) {
         if (raySign == 0) {
             return Float.POSITIVE_INFINITY;
         } else if (raySign > 0) {
@@ -63,20 +174,25 @@ public final class Level {
         }
     }
 
-    public CollisionData playerMove(Vector2 by) {
-        final int rayDirectionX = (int) Math.signum(by.x);
-        final int rayDirectionY = (int) Math.signum(by.y);
+    /**
+     * Trace movement of a body from given position by given vector, up to the first tile which is not traversable.
+     * Does not modify the level, so for fixed size levels it can be called from multiple threads at once.
+     * @return out, with the collision, travelled distance and the new position and tile
+     */
+    public CollisionData traceMove(float posX, float posY, int startTileX, int startTileY, float byX, float byY, CollisionData out) {
+        final int rayDirectionX = (int) Math.signum(byX);
+        final int rayDirectionY = (int) Math.signum(byY);
 
         float t = 0f;
-        final float distance = by.len();
+        final float distance = (float) Math.sqrt(byX * byX + byY * byY);
 
-        final float absRayX = Math.abs(by.x) / distance;
-        final float absRayY = Math.abs(by.y) / distance;
+        final float absRayX = Math.abs(byX) / distance;
+        final float absRayY = Math.abs(byY) / distance;
 
-        int tileX = playerTileX;
-        int tileY = playerTileY;
-        float remainingToCrossX = deltaToCross(playerPos.x, tileX, rayDirectionX);
-        float remainingToCrossY = deltaToCross(playerPos.y, tileY, rayDirectionY);
+        int tileX = startTileX;
+        int tileY = startTileY;
+        float remainingToCrossX = deltaToCross(posX, tileX, rayDirectionX);
+        float remainingToCrossY = deltaToCross(posY, tileY, rayDirectionY);
 
         boolean lastCrossedX = false;
         boolean collided = false;
@@ -124,48 +240,119 @@ public final class Level {
             tileY = nextTileY;
         }
 
-        final CollisionData collisionData = CollisionData.INSTANCE;
-        collisionData.collision = collided ? (lastCrossedX ? CollisionData.COLLIDED_CROSSING_X : CollisionData.COLLIDED_CROSSING_Y) : CollisionData.NO_COLLISION;
-        collisionData.distanceTravelled = t;
+        out.collision = collided ? (lastCrossedX ? CollisionData.COLLIDED_CROSSING_X : CollisionData.COLLIDED_CROSSING_Y) : CollisionData.NO_COLLISION;
+        out.distanceTravelled = t;
+        out.grassCut = false;
 
         if (t != 0f) {
-            playerTileX = tileX;
-            playerTileY = tileY;
-            playerPos.mulAdd(by, t/distance);
+            out.tileX = tileX;
+            out.tileY = tileY;
+            final float scale = t / distance;
+            out.x = posX + byX * scale;
+            out.y = posY + byY * scale;
+        } else {
+            out.tileX = startTileX;
+            out.tileY = startTileY;
+            out.x = posX;
+            out.y = posY;
         }
+        return out;
+    }
 
-        collisionData.grassCut = false;
-        if (traversable(playerTileX, playerTileY)) {
-            final float tilePosX = playerPos.x - playerTileX;
-            final float tilePosY = playerPos.y - playerTileY;
-            final byte grassBit;
-            if (tilePosX < 0.5f) {
-                if (tilePosY < 0.5f) {
-                    grassBit = GRASS_00;
-                } else {
-                    grassBit = GRASS_01;
-                }
+    /** @return GRASS_ bit of the quadrant of the tile in which the position lies */
+    public static byte grassBitAt(float x, float y, int tileX, int tileY) {
+        final float tilePosX = x - tileX;
+        final float tilePosY = y - tileY;
+        if (tilePosX < 0.5f) {
+            if (tilePosY < 0.5f) {
+                return GRASS_00;
             } else {
-                if (tilePosY < 0.5f) {
-                    grassBit = GRASS_10;
-                } else {
-                    grassBit = GRASS_11;
-                }
+                return GRASS_01;
             }
+        } else {
+            if (tilePosY < 0.5f) {
+                return GRASS_10;
+            } else {
+                return GRASS_11;
+            }
+        }
+    }
 
-            if ((tileGrass[playerTileX][playerTileY] & grassBit) != 0) {
-                collisionData.grassCut = true;
-                tileGrass[playerTileX][playerTileY] &= ~grassBit;
-                remainingGrass--;
+    /**
+     * Cut the grass of a traversable tile and record the change in {@link #changes}.
+     * @return true if there was grass to cut
+     */
+    public boolean cutGrass(int tileX, int tileY, byte grassBit) {
+        if (endless != null) {
+            if (!endless.cutGrass(tileX, tileY, grassBit)) {
+                return false;
+            }
+        } else {
+            if (!grassBoard.cut(tileX, tileY, grassBit)) {
+                return false;
             }
+            tiles[tileIndex(tileX, tileY)] &= ~grassBit;
+            remainingGrass--;
+        }
+        changes.add(tileX, tileY);
+        return true;
+    }
+
+    public CollisionData playerMove(Vector2 by) {
+        final CollisionData collisionData = traceMove(playerPos.x, playerPos.y, playerTileX, playerTileY, by.x, by.y, CollisionData.INSTANCE);
+        playerTileX = collisionData.tileX;
+        playerTileY = collisionData.tileY;
+        playerPos.set(collisionData.x, collisionData.y);
+
+        if (traversable(playerTileX, playerTileY)) {
+            collisionData.grassCut = cutGrass(playerTileX, playerTileY, grassBitAt(playerPos.x, playerPos.y, playerTileX, playerTileY));
+        }
+
+        if (endless != null) {
+            endless.update(playerTileX, playerTileY);
+            remainingGrass = endless.getLoadedGrass();
         }
 
         return collisionData;
     }
 
+    /** @return grass bits and {@link #TILE_TRAVERSABLE} of the tile, 0 for tiles outside of the level */
+    public byte tile(int x, int y) {
+        if (endless != null) return endless.tile(x, y);
+        if (x < 0 || y < 0 || x >= width || y >= height) return 0;
+        return tiles[x * height + y];
+    }
+
+    /** @return index of tile inside the level, for {@link #tile(int)}. Not for endless levels. */
+    public int tileIndex(int x, int y) {
+        return x * height + y;
+    }
+
+    /** @return grass bits and {@link #TILE_TRAVERSABLE} of the tile with valid index from {@link #tileIndex(int, int)} */
+    public byte tile(int index) {
+        return tiles[index];
+    }
+
     public boolean traversable(int x, int y) {
-        if (x < 0 || y < 0 || x >= width || y >= height) return false;
-        return tileTraversable[x][y];
+        return (tile(x, y) & TILE_TRAVERSABLE) != 0;
+    }
+
+    /** @return grass bits of the tile, 0 for non traversable tiles */
+    public byte grass(int x, int y) {
+        return (byte) (tile(x, y) & TILE_GRASS);
+    }
+
+    /**
+     * @param out set to the center of the grass quadrant nearest to the point
+     * @return false if there is no grass left, always false for endless levels
+     */
+    public boolean findNearestGrass(float x, float y, Vector2 out) {
+        return grassBoard != null && grassBoard.findNearestGrass(x, y, out);
+    }
+
+    /** @return amount of grass of tiles in [fromX, toX) x [fromY, toY), always 0 for endless levels */
+    public int remainingGrass(int fromX, int fromY, int toX, int toY) {
+        return grassBoard == null ? 0 : grassBoard.getGrass(fromX, fromY, toX, toY);
     }
 
     public static final class CollisionData {
@@ -174,6 +361,9 @@ public final class Level {
         public byte collision;
         public float distanceTravelled;
         public boolean grassCut;
+        /** Position and tile after the move */
+        public float x, y;
+        public int tileX, tileY;
 
         public static final byte NO_COLLISION = 0;
         public static final byte COLLIDED_CROSSING_X = 1;
@@ -0,0 +1,264 @@
+package com.darkyen.midnightmower.game;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores freshly generated levels on disk, so that the same (order, seed) does not have to be generated again.
+ *
+ * File format (big endian):
+ * <pre>
+ * int magic, int version
+ * int order, long seed, int width, int height
+ * int playerTileX, int playerTileY, float playerAngle, int remainingGrass
+ * traversable bits, 8 tiles per byte, lowest bit first
+ * grass nibbles, 2 tiles per byte, low nibble first
+ * </pre>
+ * Tiles are in order x * height + y.
+ *
+ * Files are written on a background thread and the least recently used ones are removed
+ * when there are more than {@link #MAX_FILES} of them or they take more than {@link #MAX_BYTES}.
+ */
+public final class LevelCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LevelCache.class);
+
+    private static final int MAGIC = 0x4D4D4C43;// MMLC
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 4 + 4 + 4 + 8 + 4 + 4 + 4 + 4 + 4 + 4;
+
+    private static final int MAX_FILES = 64;
+    private static final long MAX_BYTES = 64L * 1024 * 1024;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "Level Cache");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final File directory;
+
+    public LevelCache(File directory) {
+        this.directory = directory;
+    }
+
+    private File levelFile(int order, long seed) {
+        return new File(directory, "level-" + order + "-" + Long.toHexString(seed) + ".bin");
+    }
+
+    /** @return level from cache, or newly generated (and cached) level */
+    public Level get(int order, long seed) {
+        final File file = levelFile(order, seed);
+        if (file.isFile()) {
+            try {
+                final Level level = load(file, order, seed);
+                if (level != null) {
+                    executor.execute(() -> {
+                        // Last modified time is the last use, for eviction
+                        if (!file.setLastModified(System.currentTimeMillis())) {
+                            LOG.debug("Failed to touch cached level {}", file);
+                        }
+                    });
+                    return level;
+                }
+                LOG.warn("Level cache file {} is not valid", file);
+            } catch (IOException e) {
+                LOG.warn("Failed to load cached level {}", file, e);
+            }
+        }
+
+        final Level level = new Level(order, seed);
+        // Tiles are packed now, before any grass is cut, only the writing is left for the background thread
+        final ByteBuffer data = serialize(level);
+        executor.execute(() -> {
+            try {
+                write(file, data);
+            } catch (IOException e) {
+                LOG.warn("Failed to cache level {}", file, e);
+            }
+            evict();
+        });
+        return level;
+    }
+
+    /** Remove least recently used levels, until the limits are met. Run on the background thread. */
+    private void evict() {
+        final File[] files = directory.listFiles((dir, name) -> name.startsWith("level-") && name.endsWith(".bin"));
+        if (files == null) {
+            return;
+        }
+        long totalBytes = 0;
+        for (int i = 0; i < files.length; i++) {
+            totalBytes += files[i].length();
+        }
+        if (files.length <= MAX_FILES && totalBytes <= MAX_BYTES) {
+            return;
+        }
+        final long[] lastModified = new long[files.length];
+        final Integer[] byAge = new Integer[files.length];
+        for (int i = 0; i < files.length; i++) {
+            lastModified[i] = files[i].lastModified();
+            byAge[i] = i;
+        }
+        Arrays.sort(byAge, Comparator.comparingLong(i -> lastModified[i]));
+
+        int fileCount = files.length;
+        for (int i = 0; i < byAge.length && (fileCount > MAX_FILES || totalBytes > MAX_BYTES); i++) {
+            final File file = files[byAge[i]];
+            final long size = file.length();
+            if (file.delete()) {
+                fileCount--;
+                totalBytes -= size;
+            } else {
+                LOG.warn("Failed to evict cached level {}", file);
+            }
+        }
+    }
+
+    /** Wait for the levels which are being written. */
+    public void dispose() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                LOG.warn("Level cache did not finish in time");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int traversableBytes(int tiles) {
+        return (tiles + 7) >>> 3;
+    }
+
+    private static int grassBytes(int tiles) {
+        return (tiles + 1) >>> 1;
+    }
+
+    /** @return size of tiles written by {@link #putTiles(Level, ByteBuffer)} */
+    static int tilesBytes(int tiles) {
+        return traversableBytes(tiles) + grassBytes(tiles);
+    }
+
+    /** Write traversable bits and grass nibbles of all tiles of a fixed size level. */
+    static void putTiles(Level level, ByteBuffer out) {
+        final int tiles = level.width * level.height;
+        for (int tile = 0; tile < tiles; tile += 8) {
+            int bits = 0;
+            for (int i = 0; i < 8 && tile + i < tiles; i++) {
+                if ((level.tile(tile + i) & Level.TILE_TRAVERSABLE) != 0) {
+                    bits |= 1 << i;
+                }
+            }
+            out.put((byte) bits);
+        }
+        for (int tile = 0; tile < tiles; tile += 2) {
+            int nibbles = level.tile(tile) & Level.TILE_GRASS;
+            if (tile + 1 < tiles) {
+                nibbles |= (level.tile(tile + 1) & Level.TILE_GRASS) << 4;
+            }
+            out.put((byte) nibbles);
+        }
+    }
+
+    /**
+     * Read tiles written by {@link #putTiles(Level, ByteBuffer)}, with absolute reads straight from the buffer,
+     * which is then positioned after the tiles.
+     */
+    static byte[] getTiles(ByteBuffer in, int tiles) {
+        final int traversableOffset = in.position();
+        final int grassOffset = traversableOffset + traversableBytes(tiles);
+
+        final byte[] levelTiles = new byte[tiles];
+        for (int tile = 0; tile < tiles; tile++) {
+            final int traversable = (in.get(traversableOffset + (tile >>> 3)) & (1 << (tile & 7))) != 0 ? Level.TILE_TRAVERSABLE : 0;
+            final int grass = (in.get(grassOffset + (tile >>> 1)) >>> ((tile & 1) << 2)) & Level.TILE_GRASS;
+            levelTiles[tile] = (byte) (traversable | grass);
+        }
+        in.position(grassOffset + grassBytes(tiles));
+        return levelTiles;
+    }
+
+    private static Level load(File file, int order, long seed) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long fileSize = channel.size();
+            if (fileSize < HEADER_SIZE) {
+                return null;
+            }
+            final MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+
+            if (data.getInt() != MAGIC || data.getInt() != VERSION || data.getInt() != order || data.getLong() != seed) {
+                return null;
+            }
+            final int width = data.getInt();
+            final int height = data.getInt();
+            final int playerTileX = data.getInt();
+            final int playerTileY = data.getInt();
+            final float playerAngle = data.getFloat();
+            final int remainingGrass = data.getInt();
+
+            if (width <= 0 || height <= 0) {
+                return null;
+            }
+            final long tiles = (long) width * height;
+            if (tiles > Integer.MAX_VALUE || fileSize != HEADER_SIZE + tilesBytes((int) tiles)) {
+                return null;
+            }
+
+            final byte[] levelTiles = getTiles(data, (int) tiles);
+            final Level level = new Level(order, seed, width, height, levelTiles, remainingGrass, playerTileX, playerTileY, playerAngle);
+            // Level with wrong count could never be completed
+            if (level.grassBoard.getGrass() != remainingGrass) {
+                return null;
+            }
+            return level;
+        }
+    }
+
+    /** Pack the level, must be called before the level is played. */
+    private static ByteBuffer serialize(Level level) {
+        final int width = level.width;
+        final int height = level.height;
+        final int tiles = width * height;
+
+        final ByteBuffer data = ByteBuffer.allocate(HEADER_SIZE + tilesBytes(tiles));
+        data.putInt(MAGIC).putInt(VERSION).putInt(level.order).putLong(level.seed).putInt(width).putInt(height);
+        data.putInt(level.playerTileX).putInt(level.playerTileY).putFloat(level.playerAngle).putInt(level.remainingGrass);
+
+        putTiles(level, data);
+        data.flip();
+        return data;
+    }
+
+    private void write(File file, ByteBuffer data) throws IOException {
+        // Write to temporary file first, so that a partially written file is never visible
+        final Path directory = this.directory.toPath();
+        Files.createDirectories(directory);
+        final Path temporary = Files.createTempFile(directory, "level-", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+            Files.move(temporary, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+}
@@ -1,53 +1,161 @@
 package com.darkyen.midnightmower.game;
 
 import com.badlogic.gdx.math.MathUtils;
-import com.badlogic.gdx.utils.LongArray;
+import com.badlogic.gdx.utils.IntArray;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Random;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * Generates level layouts.
+ * All randomness comes from {@link CounterRandom}, so the result depends only on the seed, not on the order of work.
  *
+ * Instance keeps its scratch buffers between levels, so generating many levels with one instance allocates little
+ * more than the results. Instance can't be used from multiple threads at once, static methods use one instance per thread.
  */
 public final class LevelGenerator {
 
     private static final Logger LOG = LoggerFactory.getLogger(LevelGenerator.class);
-    
-    private static final Random random = new Random();
+
+    private static final ThreadLocal<LevelGenerator> THREAD_GENERATOR = ThreadLocal.withInitial(LevelGenerator::new);
+
+    //region Scratch buffers
+    private int[] points = new int[0];
+    /** Index of closest point for each tile, x * height + y */
+    private int[] regions = new int[0];
+    private long[] filled = new long[0];
+    /** Tiles which were ever put into regionQueue, no tile needs to be there twice */
+    private long[] queued = new long[0];
+    private final IntRingQueue regionQueue = new IntRingQueue(64);
+    private final IntArray frontier = new IntArray(false, 64);
+    private final VoronoiGrid voronoiGrid = new VoronoiGrid();
+    //endregion
+
+    /** @return how many tiles should be traversable in level of given order */
+    public static int filledTilesForOrder(int order) {
+        return 5 + order * 20;
+    }
 
     public static LevelData generateLevel(int filledTiles, long seed) {
+        return generateLevel(filledTiles, seed, null);
+    }
+
+    /**
+     * Generated level depends only on filledTiles and seed.
+     * Can be called from any thread.
+     * @param pool to parallelize the generation in, null to generate everything on the calling thread
+     */
+    public static LevelData generateLevel(int filledTiles, long seed, ForkJoinPool pool) {
+        return THREAD_GENERATOR.get().generate(filledTiles, seed, pool);
+    }
+
+    /**
+     * Generate levels of orders[i] and seeds[i] in parallel, each level is generated on a single thread.
+     * Results are not kept, they are passed to the consumer as soon as they are done, in no particular order.
+     * Returns after all levels were consumed.
+     *
+     * @param consumer called concurrently from threads of the pool
+     */
+    public static void generateLevels(int[] orders, long[] seeds, ForkJoinPool pool, LevelConsumer consumer) {
+        if (orders.length != seeds.length) {
+            throw new IllegalArgumentException("orders and seeds must have the same length");
+        }
+        final int count = orders.length;
+        if (count == 0) return;
+        final int grain = Math.max(1, Math.min(64, count / (pool.getParallelism() * 8)));
+        pool.invoke(new BatchTask(orders, seeds, consumer, 0, count, grain));
+    }
+
+    public interface LevelConsumer {
+        /** @param index of the level's order and seed in the batch */
+        void accept(int index, int order, long seed, LevelData level);
+    }
+
+    private static final class BatchTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] orders;
+        private final long[] seeds;
+        private final LevelConsumer consumer;
+        private final int from, to;
+        private final int grain;
+
+        private BatchTask(int[] orders, long[] seeds, LevelConsumer consumer, int from, int to, int grain) {
+            this.orders = orders;
+            this.seeds = seeds;
+            this.consumer = consumer;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                final LevelGenerator generator = THREAD_GENERATOR.get();
+                for (int i = from; i < to; i++) {
+                    final int order = orders[i];
+                    final long seed = seeds[i];
+                    consumer.accept(i, order, seed, generator.generate(filledTilesForOrder(order), seed, null));
+                }
+                return;
+            }
+            final int middle = (from + to) >>> 1;
+            invokeAll(new BatchTask(orders, seeds, consumer, from, middle, grain),
+                    new BatchTask(orders, seeds, consumer, middle, to, grain));
+        }
+    }
+
+    /**
+     * Generated level depends only on filledTiles and seed.
+     * @param pool to parallelize the generation in, null to generate everything on the calling thread
+     */
+    public LevelData generate(int filledTiles, long seed, ForkJoinPool pool) {
         final float fillRatio = 0.3f;// 30% filed
         final float tiles = filledTiles / fillRatio + 1f;
         final int width = (int) Math.sqrt(tiles);
         final int height = (int) Math.ceil(tiles / width);
 
-        final Random random = LevelGenerator.random;
-        random.setSeed(seed);
-
-        final int[] points = genPoints((width + height) * 5, width, height, random);
-        final int[][] voronoiBitmap = createVoronoiBitmap(points, width, height);
-        final boolean[][] fillMap = createFillMap(voronoiBitmap, width, height, width / 2, height / 2, filledTiles);
+        final int pointCount = (width + height) * 5;
+        genPoints(pointCount, width, height, seed);
+        createVoronoiBitmap(pointCount, width, height, pool);
+        final byte[] tileMap = createFillMap(width, height, width / 2, height / 2, filledTiles, seed);
 
-        final LongArray playerPositions = new LongArray();
+        int filledCount = 0;
         long xSum = 0;
         long ySum = 0;
+        int tile = 0;
         for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                if (fillMap[x][y]) {
+            for (int y = 0; y < height; y++, tile++) {
+                if (tileMap[tile] != 0) {
                     xSum += x;
                     ySum += y;
-                    playerPositions.add(toKey(x, y));
+                    filledCount++;
                 }
             }
         }
-        final long playerPosition = playerPositions.random();
-        final int playerX = keyX(playerPosition);
-        final int playerY = keyY(playerPosition);
 
+        // Player starts on random filled tile
+        int playerX = -1, playerY = -1;
+        int playerPosition = CounterRandom.nextInt(seed, CounterRandom.STREAM_PLAYER, 0, filledCount);
+        tile = 0;
+        playerSearch:
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++, tile++) {
+                if (tileMap[tile] != 0 && playerPosition-- == 0) {
+                    playerX = x;
+                    playerY = y;
+                    break playerSearch;
+                }
+            }
+        }
 
-        final float averageX = (float) ((double)xSum / playerPositions.size);
-        final float averageY = (float) ((double)ySum / playerPositions.size);
+        final float averageX = (float) ((double)xSum / filledCount);
+        final float averageY = (float) ((double)ySum / filledCount);
         final float toAverageX = averageX - playerX;
         final float toAverageY = averageY - playerY;
 
@@ -55,123 +163,278 @@ public final class LevelGenerator {
         int playerAngle = (int) Math.round(Math.atan2(toAverageX, toAverageY) * MathUtils.radiansToDegrees);
         if (playerAngle < 0) playerAngle += 360;
 
-        return new LevelData(fillMap, width, height, playerX, playerY, playerAngle);
+        return new LevelData(tileMap, width, height, playerX, playerY, playerAngle);
     }
 
-    private static long toKey(int x, int y) {
-        return ((long)x << 32) | ((long)y & 0xFFFF_FFFFL);
+    private static boolean getBit(long[] bits, int index) {
+        return (bits[index >>> 6] & (1L << index)) != 0;
     }
 
-    private static int keyX(long key) {
-        return (int) (key >>> 32);
+    private static void setBit(long[] bits, int index) {
+        bits[index >>> 6] |= 1L << index;
     }
 
-    private static int keyY(long key) {
-        return (int) (key & 0xFFFF_FFFFL);
-    }
-
-    private static boolean isConsiderable(boolean[][] fillMap, int x, int y) {
-        return x >= 0 && y >= 0 && x < fillMap.length && y < fillMap[0].length && !fillMap[x][y];
+    /** @return bits, if it is large enough, otherwise new array, either way with first `bitCount` bits cleared */
+    private static long[] clearedBits(long[] bits, int bitCount) {
+        final int words = (bitCount + 63) >>> 6;
+        if (bits.length < words) {
+            return new long[Math.max(words, bits.length * 2)];
+        }
+        Arrays.fill(bits, 0, words, 0L);
+        return bits;
     }
 
-    private static boolean[][] createFillMap(int[][] indexMap, int width, int height, int startX, int startY, int tiles) {
-        final boolean[][] map = new boolean[width][height];// Full of false
+    /**
+     * Grows the filled area from start, one Voronoi region (of {@link #regions}) at a time.
+     * Region is filled breadth-first, tiles of other regions that touch the filled area are collected and when
+     * the region is exhausted, the next region is entered through a random one of them.
+     *
+     * Tiles are indexed as x * height + y.
+     * @return tiles of the level, filled ones with {@link Level#TILE_TRAVERSABLE}
+     */
+    private byte[] createFillMap(int width, int height, int startX, int startY, int tiles, long seed) {
         assert width * height >= tiles;
+        final int tileCount = width * height;
+        final long[] filled = this.filled = clearedBits(this.filled, tileCount);
+        final long[] queued = this.queued = clearedBits(this.queued, tileCount);
+        final int[] regions = this.regions;
         int remainingTiles = tiles;
 
         int currentIndex = -1;
-        final LongArray coordStack = new LongArray(true, 100);
-        final LongArray possibleNextIndexStack = new LongArray(false, 100);
-        possibleNextIndexStack.add(toKey(startX, startY));
+        long picks = 0;
+        final IntRingQueue regionQueue = this.regionQueue;
+        regionQueue.clear();
+        final IntArray frontier = this.frontier;
+        frontier.clear();
+        frontier.add(startX * height + startY);
 
-        tileLoop:
         while (remainingTiles > 0) {
-            if (coordStack.size > 0) {
-                // Add next from coord stack
-                while (coordStack.size > 0) {
-                    final long key = coordStack.removeIndex(0);
-                    final int x = keyX(key);
-                    final int y = keyY(key);
-                    if (map[x][y]) {
-                        // Already filled
-                        continue;
-                    }
-                    // Not filled yet, fill now!
-                    map[x][y] = true;
-                    remainingTiles--;
-
-                    // Populate neighbors
-                    if (isConsiderable(map, x-1, y)) {
-                        if (indexMap[x-1][y] == currentIndex) {
-                            coordStack.add(toKey(x-1, y));
-                        } else {
-                            possibleNextIndexStack.add(toKey(x-1, y));
-                        }
-                    }
-
-                    if (isConsiderable(map, x+1, y)) {
-                        if (indexMap[x+1][y] == currentIndex) {
-                            coordStack.add(toKey(x+1, y));
-                        } else {
-                            possibleNextIndexStack.add(toKey(x+1, y));
-                        }
-                    }
-
-                    if (isConsiderable(map, x, y-1)) {
-                        if (indexMap[x][y-1] == currentIndex) {
-                            coordStack.add(toKey(x, y-1));
-                        } else {
-                            possibleNextIndexStack.add(toKey(x, y-1));
-                        }
-                    }
-
-                    if (isConsiderable(map, x, y+1)) {
-                        if (indexMap[x][y+1] == currentIndex) {
-                            coordStack.add(toKey(x, y+1));
-                        } else {
-                            possibleNextIndexStack.add(toKey(x, y+1));
-                        }
-                    }
-
-                    break;
+            final int tile;
+            if (regionQueue.size > 0) {
+                tile = regionQueue.removeFirst();
+                if (getBit(filled, tile)) {
+                    continue;
                 }
             } else {
-                // Coord stack is empty
-                possibleNextIndexStack.shuffle();
-
-                while (possibleNextIndexStack.size > 0) {
-                    final long nextKey = possibleNextIndexStack.pop();
-                    // Check if this position is not filled yet
-                    final int nextX = keyX(nextKey);
-                    final int nextY = keyY(nextKey);
-                    if (!map[nextX][nextY]) {
-                        // Valid!
-                        currentIndex = indexMap[nextX][nextY];
-                        coordStack.add(nextKey);
-                        continue tileLoop;
+                // Region is exhausted, pick random tile of some neighboring region
+                int picked = -1;
+                while (frontier.size > 0) {
+                    final int candidate = frontier.removeIndex(CounterRandom.nextInt(seed, CounterRandom.STREAM_FILL, picks++, frontier.size));
+                    if (!getBit(filled, candidate)) {
+                        picked = candidate;
+                        break;
                     }
                 }
 
-                LOG.error("Can't continue map fill, {} tiles remaining", remainingTiles);
-                break;
+                if (picked == -1) {
+                    LOG.error("Can't continue map fill, {} tiles remaining", remainingTiles);
+                    break;
+                }
+
+                tile = picked;
+                setBit(queued, tile);
+                currentIndex = regions[tile];
             }
+
+            setBit(filled, tile);
+            remainingTiles--;
+
+            // Populate neighbors
+            final int x = tile / height;
+            final int y = tile % height;
+            if (x > 0) considerNeighbor(currentIndex, tile - height);
+            if (x + 1 < width) considerNeighbor(currentIndex, tile + height);
+            if (y > 0) considerNeighbor(currentIndex, tile - 1);
+            if (y + 1 < height) considerNeighbor(currentIndex, tile + 1);
         }
 
+        final byte[] map = new byte[tileCount];
+        for (int tile = 0; tile < tileCount; tile++) {
+            if (getBit(filled, tile)) {
+                map[tile] = Level.TILE_TRAVERSABLE;
+            }
+        }
         return map;
     }
 
-    private static int[][] createVoronoiBitmap(int[] points, int width, int height) {
-        final int[][] map = new int[width][height];
+    private void considerNeighbor(int currentIndex, int tile) {
+        if (getBit(filled, tile)) {
+            return;
+        }
+        if (regions[tile] == currentIndex) {
+            if (!getBit(queued, tile)) {
+                setBit(queued, tile);
+                regionQueue.addLast(tile);
+            }
+        } else {
+            frontier.add(tile);
+        }
+    }
 
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                map[x][y] = findClosestPointIndex(points, x, y);
+    /** FIFO queue of ints in a growable ring buffer. */
+    private static final class IntRingQueue {
+        private int[] items;
+        private int head = 0;
+        int size = 0;
+
+        IntRingQueue(int initialCapacity) {
+            items = new int[Math.max(initialCapacity, 1)];
+        }
+
+        void addLast(int value) {
+            int[] items = this.items;
+            if (size == items.length) {
+                final int[] newItems = new int[items.length * 2];
+                final int tail = items.length - head;
+                System.arraycopy(items, head, newItems, 0, tail);
+                System.arraycopy(items, 0, newItems, tail, head);
+                this.items = items = newItems;
+                head = 0;
             }
+            int index = head + size;
+            if (index >= items.length) index -= items.length;
+            items[index] = value;
+            size++;
         }
 
-        return map;
+        void clear() {
+            head = 0;
+            size = 0;
+        }
+
+        int removeFirst() {
+            assert size > 0;
+            final int value = items[head];
+            if (++head == items.length) head = 0;
+            size--;
+            return value;
+        }
     }
-    
+
+    /**
+     * Fills {@link #regions} with the index of the closest point (lowest index on ties) of {@link #points}.
+     * Points are bucketed into a uniform grid of cells, so that each tile only has to check few cells around it,
+     * instead of all points.
+     *
+     * @param pool to split columns into, null to compute on the calling thread, result is the same
+     */
+    private void createVoronoiBitmap(int pointCount, int width, int height, ForkJoinPool pool) {
+        if (regions.length < width * height) {
+            regions = new int[Math.max(width * height, regions.length * 2)];
+        }
+        final int[] regions = this.regions;
+        final VoronoiGrid grid = this.voronoiGrid;
+        grid.set(points, pointCount, width, height);
+
+        ColumnWork.run(pool, width, height, (fromX, toX) -> {
+            for (int x = fromX; x < toX; x++) {
+                final int columnStart = x * height;
+                for (int y = 0; y < height; y++) {
+                    regions[columnStart + y] = grid.findClosestPointIndex(x, y);
+                }
+            }
+            return 0;
+        });
+    }
+
+    /** Points bucketed into cells. Can be reused for different points, but must not be modified while being queried. */
+    private static final class VoronoiGrid {
+        private int[] points;
+        private int cellSize;
+        private int cellsX, cellsY;
+        /** Points of cell c are cellPoints[cellStart[c] until cellStart[c+1]], ascending. */
+        private int[] cellStart = new int[0];
+        private int[] cellPoints = new int[0];
+        private int[] cellFill = new int[0];
+
+        void set(int[] points, int pointCount, int width, int height) {
+            this.points = points;
+
+            // Aim for about two points per cell
+            cellSize = Math.max(1, (int) Math.sqrt((double) width * height * 2.0 / Math.max(pointCount, 1)));
+            cellsX = (width + cellSize - 1) / cellSize;
+            cellsY = (height + cellSize - 1) / cellSize;
+            final int cells = cellsX * cellsY;
+
+            if (cellStart.length < cells + 1) {
+                cellStart = new int[Math.max(cells + 1, cellStart.length * 2)];
+                cellFill = new int[cellStart.length];
+            }
+            if (cellPoints.length < pointCount) {
+                cellPoints = new int[Math.max(pointCount, cellPoints.length * 2)];
+            }
+            final int[] cellStart = this.cellStart;
+            final int[] cellFill = this.cellFill;
+            Arrays.fill(cellStart, 0, cells + 1, 0);
+            Arrays.fill(cellFill, 0, cells, 0);
+
+            // Counting sort of point indices into cells, indices stay ascending inside each cell
+            for (int i = 0; i < pointCount; i++) {
+                cellStart[cellOf(i) + 1]++;
+            }
+            for (int c = 0; c < cells; c++) {
+                cellStart[c + 1] += cellStart[c];
+            }
+            for (int i = 0; i < pointCount; i++) {
+                final int cell = cellOf(i);
+                cellPoints[cellStart[cell] + cellFill[cell]++] = i;
+            }
+        }
+
+        private int cellOf(int pointIndex) {
+            final int cellX = Math.min(points[pointIndex*2] / cellSize, cellsX - 1);
+            final int cellY = Math.min(points[pointIndex*2+1] / cellSize, cellsY - 1);
+            return cellX * cellsY + cellY;
+        }
+
+        /** @return same as {@link LevelGenerator#findClosestPointIndex(int[], int, int)} */
+        int findClosestPointIndex(int x, int y) {
+            final int[] points = this.points;
+            final int cellSize = this.cellSize;
+            final int cellX = x / cellSize;
+            final int cellY = y / cellSize;
+
+            int closest = -1;
+            int closestDistance2 = Integer.MAX_VALUE;
+
+            final int maxRing = Math.max(cellsX, cellsY);
+            for (int ring = 0; ring <= maxRing; ring++) {
+                if (closest != -1) {
+                    // Every point in this ring is at least this far away on one axis
+                    final int ringDistance = (ring - 1) * cellSize + 1;
+                    if (closestDistance2 < ringDistance * ringDistance) {
+                        break;
+                    }
+                }
+
+                final int minCX = cellX - ring, maxCX = cellX + ring;
+                final int minCY = cellY - ring, maxCY = cellY + ring;
+                for (int cx = Math.max(minCX, 0); cx <= Math.min(maxCX, cellsX - 1); cx++) {
+                    // Only the border of the ring, inside was already visited
+                    final int step = cx == minCX || cx == maxCX ? 1 : maxCY - minCY;
+                    for (int cy = minCY; cy <= maxCY; cy += step) {
+                        if (cy < 0 || cy >= cellsY) continue;
+
+                        final int cell = cx * cellsY + cy;
+                        for (int p = cellStart[cell]; p < cellStart[cell + 1]; p++) {
+                            final int i = cellPoints[p];
+                            final int dX = points[i*2] - x;
+                            final int dY = points[i*2+1] - y;
+                            final int dist2 = dX * dX + dY * dY;
+                            if (dist2 < closestDistance2 || (dist2 == closestDistance2 && i < closest)) {
+                                closest = i;
+                                closestDistance2 = dist2;
+                            }
+                        }
+                    }
+                }
+            }
+
+            return closest;
+        }
+    }
+
+    /** Reference implementation of {@link #createVoronoiBitmap(int, int, int, ForkJoinPool)}, checks all points. */
     private static int findClosestPointIndex(int[] points, int x, int y) {
         int closest = -1;
         int closestDistance2 = Integer.MAX_VALUE;
@@ -189,23 +452,26 @@ public final class LevelGenerator {
         return closest;
     }
     
-    private static int[] genPoints(int numPoints, int width, int height, Random random) {
-        final int[] points = new int[numPoints * 2];
-        for (int i = 0; i < numPoints * 2; i += 2) {
-            points[i] = random.nextInt(width);
-            points[i+1] = random.nextInt(height);
+    private void genPoints(int pointCount, int width, int height, long seed) {
+        if (points.length < pointCount * 2) {
+            points = new int[Math.max(pointCount * 2, points.length * 2)];
+        }
+        final int[] points = this.points;
+        for (int i = 0; i < pointCount * 2; i += 2) {
+            points[i] = CounterRandom.nextInt(seed, CounterRandom.STREAM_POINTS, i, width);
+            points[i+1] = CounterRandom.nextInt(seed, CounterRandom.STREAM_POINTS, i + 1, height);
         }
-        return points;
     }
 
     public static final class LevelData {
-        public final boolean[][] filled;
+        /** Packed tiles as in {@link Level}, index x * height + y, only {@link Level#TILE_TRAVERSABLE} is set */
+        public final byte[] tiles;
         public final int width, height;
         public final int playerX, playerY;
         public final int playerAngle;
 
-        public LevelData(boolean[][] filled, int width, int height, int playerX, int playerY, int playerAngle) {
-            this.filled = filled;
+        public LevelData(byte[] tiles, int width, int height, int playerX, int playerY, int playerAngle) {
+            this.tiles = tiles;
             this.width = width;
             this.height = height;
             this.playerX = playerX;
@@ -214,28 +480,102 @@ public final class LevelGenerator {
         }
     }
 
-    public static void main(String[] args){
-        // Test voronoi bitmap
-        /*
-        final int size = 50;
-        final int[][] voronoiBitmap = createVoronoiBitmap(genPoints(100, size, size, random), size, size);
-        for (int y = 0; y < size; y++) {
-            for (int x = 0; x < size; x++) {
-                System.out.print(voronoiBitmap[x][y]);
+    /** Measures Voronoi bitmap and fill map creation on growing levels, time per tile should stay roughly constant.
+     * Parallel result must be identical to the sequential one, smaller sizes are also checked against
+     * the brute force {@link #findClosestPointIndex(int[], int, int)}. */
+    private static void benchmarkVoronoi() {
+        final LevelGenerator generator = new LevelGenerator();
+        final ForkJoinPool pool = ForkJoinPool.commonPool();
+        System.out.println("Parallelism: "+pool.getParallelism());
+
+        for (int size = 64; size <= 4096; size *= 2) {
+            final int pointCount = size * 2 * 5;
+            generator.genPoints(pointCount, size, size, size);
+            final int[] points = Arrays.copyOf(generator.points, pointCount * 2);
+
+            // Warm-up
+            generator.createVoronoiBitmap(pointCount, size, size, pool);
+            generator.createVoronoiBitmap(pointCount, size, size, null);
+
+            long start = System.nanoTime();
+            generator.createVoronoiBitmap(pointCount, size, size, pool);
+            final long parallelDuration = System.nanoTime() - start;
+            final int[] parallelMap = Arrays.copyOf(generator.regions, size * size);
+
+            start = System.nanoTime();
+            generator.createVoronoiBitmap(pointCount, size, size, null);
+            final long duration = System.nanoTime() - start;
+            final int[] map = generator.regions;
+
+            for (int i = 0; i < size * size; i++) {
+                if (map[i] != parallelMap[i]) {
+                    throw new AssertionError("Parallel Voronoi mismatch at " + (i / size) + ", " + (i % size));
+                }
             }
-            System.out.println();
-        }
 
-        System.out.println();
+            if (size <= 512) {
+                for (int x = 0; x < size; x++) {
+                    for (int y = 0; y < size; y++) {
+                        if (map[x * size + y] != findClosestPointIndex(points, x, y)) {
+                            throw new AssertionError("Voronoi mismatch at " + x + ", " + y);
+                        }
+                    }
+                }
+            }
 
-        final boolean[][] fillMap = createFillMap(voronoiBitmap, size, size, size / 2, size / 2, size * 3);
-        for (int y = 0; y < size; y++) {
-            for (int x = 0; x < size; x++) {
-                System.out.print(fillMap[x][y] ? 'X' : '.');
+            start = System.nanoTime();
+            generator.createFillMap(size, size, size / 2, size / 2, size * size * 3 / 10, size);
+            final long fillDuration = System.nanoTime() - start;
+
+            final long tiles = (long) size * size;
+            System.out.printf("%5d x %-5d %10d tiles %10.2f ms %8.2f ns/tile, parallel %10.2f ms, fill %10.2f ms%n", size, size, tiles,
+                    duration / 1_000_000.0, (double) duration / tiles, parallelDuration / 1_000_000.0, fillDuration / 1_000_000.0);
+        }
+    }
+
+    /** Measures {@link #generateLevels(int[], long[], ForkJoinPool, LevelConsumer)} against generating the same levels one by one. */
+    private static void benchmarkBatch() {
+        final int count = 20_000;
+        final int[] orders = new int[count];
+        final long[] seeds = new long[count];
+        for (int i = 0; i < count; i++) {
+            orders[i] = 1 + i % 20;
+            seeds[i] = i;
+        }
+        final ForkJoinPool pool = ForkJoinPool.commonPool();
+        final long[] angleSums = new long[2];
+
+        for (int round = 0; round < 2; round++) {
+            long start = System.nanoTime();
+            final LevelGenerator generator = new LevelGenerator();
+            long sequentialSum = 0;
+            for (int i = 0; i < count; i++) {
+                sequentialSum += generator.generate(filledTilesForOrder(orders[i]), seeds[i], null).playerAngle;
             }
-            System.out.println();
+            final long sequentialDuration = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            final AtomicLong batchSum = new AtomicLong();
+            generateLevels(orders, seeds, pool, (index, order, seed, level) -> batchSum.addAndGet(level.playerAngle));
+            final long batchDuration = System.nanoTime() - start;
+
+            angleSums[0] = sequentialSum;
+            angleSums[1] = batchSum.get();
+            System.out.printf("%d levels: sequential %.2f ms, batch (parallelism %d) %.2f ms%n", count,
+                    sequentialDuration / 1_000_000.0, pool.getParallelism(), batchDuration / 1_000_000.0);
+        }
+
+        if (angleSums[0] != angleSums[1]) {
+            throw new AssertionError("Batch results differ from sequential");
+        }
+    }
+
+    public static void main(String[] args){
+        if (args.length > 0 && "benchmark".equals(args[0])) {
+            benchmarkVoronoi();
+            benchmarkBatch();
+            return;
         }
-        */
 
         long seed = 1234;
 
@@ -247,7 +587,7 @@ public final class LevelGenerator {
                     if (x == levelData.playerX && y == levelData.playerY) {
                         System.out.print('P');
                     } else {
-                        System.out.print(levelData.filled[x][y] ? 'X' : '.');
+                        System.out.print(levelData.tiles[x * levelData.height + y] != 0 ? 'X' : '.');
                     }
                 }
                 System.out.println();
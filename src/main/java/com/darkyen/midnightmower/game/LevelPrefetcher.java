@@ -0,0 +1,97 @@
+package com.darkyen.midnightmower.game;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Generates the next {@link Level} on a background thread, so that the render thread does not have to wait for it.
+ * Not thread safe, should be used only from the render thread.
+ */
+public final class LevelPrefetcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LevelPrefetcher.class);
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "Level Prefetcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LevelCache levelCache;
+
+    private Future<Level> pending = null;
+    private int pendingOrder;
+    private long pendingSeed;
+
+    public LevelPrefetcher(LevelCache levelCache) {
+        this.levelCache = levelCache;
+    }
+
+    /** Start generating the level in background. Previously prefetched level is discarded. */
+    public void prefetch(int order, long seed) {
+        cancel();
+        pendingOrder = order;
+        pendingSeed = seed;
+        pending = executor.submit(() -> levelCache.get(order, seed));
+    }
+
+    /** @return true if {@link #prefetch(int, long)} was called and its level was not taken yet */
+    public boolean isPending() {
+        return pending != null;
+    }
+
+    /** @return prefetched level if it is done, null if not prefetching or not done yet */
+    public Level poll() {
+        if (pending == null || !pending.isDone()) {
+            return null;
+        }
+        return take(0L);
+    }
+
+    /**
+     * Wait at most timeoutMs for the prefetched level.
+     * If the background generation failed, the level is generated on the calling thread.
+     * @return prefetched level or null if not prefetching or not done in time
+     */
+    public Level take(long timeoutMs) {
+        final Future<Level> pending = this.pending;
+        if (pending == null) {
+            return null;
+        }
+
+        try {
+            final Level level = pending.get(timeoutMs, TimeUnit.MILLISECONDS);
+            this.pending = null;
+            return level;
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            LOG.error("Failed to prefetch level {} ({})", pendingOrder, pendingSeed, e.getCause());
+            this.pending = null;
+            return levelCache.get(pendingOrder, pendingSeed);
+        }
+    }
+
+    /** Discard the level which is being prefetched, if any. */
+    public void cancel() {
+        if (pending != null) {
+            pending.cancel(false);
+            pending = null;
+        }
+    }
+
+    public void dispose() {
+        cancel();
+        executor.shutdownNow();
+    }
+}
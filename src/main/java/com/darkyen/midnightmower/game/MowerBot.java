@@ -0,0 +1,249 @@
+package com.darkyen.midnightmower.game;
+
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * Mows a fixed size level without a player, for benchmarks and soak testing.
+ *
+ * The route is planned over cells of half a tile, one per grass quadrant. From the current cell it always goes
+ * by the shortest path to the nearest cell with grass which the route did not cover yet, until all are covered.
+ * Cells of one straight segment are merged, so the route is a list of corners.
+ * Driving then turns in place towards the next corner and goes straight to it.
+ *
+ * Corners which can't be reached are skipped, so when the route ends, some grass may be left.
+ * The route is then planned again from the current cell, until the grass stops decreasing.
+ */
+public final class MowerBot implements Simulation.InputSource {
+
+    /** Corner is reached when the player is this close to its center */
+    private static final float REACH_DISTANCE = 0.03f;
+    /** Drive forward only when the heading differs from the target direction by less than this */
+    private static final float DRIVE_ANGLE = 2f;
+    /** Skip corner when stuck on a wall for this many ticks */
+    private static final int MAX_STUCK_TICKS = 240;
+    /** Stop planning again when this many routes in a row did not cut any grass */
+    private static final int MAX_FRUITLESS_ROUTES = 3;
+
+    private final Level level;
+    /** Route as cell indices, cell = cellX * cellsY + cellY */
+    private IntArray route;
+    private final int cellsY;
+    private int routeIndex = 0;
+    private int stuckTicks = 0;
+
+    private int skippedCorners = 0;
+    private int replans = 0;
+    private int fruitlessRoutes = 0;
+    /** Remaining grass when the current route was planned */
+    private int routeStartGrass;
+
+    public MowerBot(Level level) {
+        if (level.isEndless()) {
+            throw new IllegalArgumentException("Endless levels are not supported");
+        }
+        this.level = level;
+        this.cellsY = level.height * 2;
+        this.route = planRoute(level);
+        this.routeStartGrass = level.remainingGrass;
+    }
+
+    /** @return amount of corners of the planned route */
+    public int getRouteLength() {
+        return route.size;
+    }
+
+    /** @return true if the whole route has been driven and there is no route to the remaining grass */
+    public boolean isFinished() {
+        return routeIndex >= route.size;
+    }
+
+    /** @return amount of corners which were skipped, because they were passed or the bot got stuck */
+    public int getSkippedCorners() {
+        return skippedCorners;
+    }
+
+    /** @return amount of times the route was planned again, because grass was left after it */
+    public int getReplans() {
+        return replans;
+    }
+
+    /** Plan new route from the current cell to the grass which is left. @return false if there is no such route */
+    private boolean replan() {
+        if (level.remainingGrass <= 0) {
+            return false;
+        }
+        if (level.remainingGrass >= routeStartGrass) {
+            if (++fruitlessRoutes >= MAX_FRUITLESS_ROUTES) {
+                return false;
+            }
+        } else {
+            fruitlessRoutes = 0;
+        }
+        route = planRoute(level);
+        routeIndex = 0;
+        stuckTicks = 0;
+        routeStartGrass = level.remainingGrass;
+        replans++;
+        return route.size > 0;
+    }
+
+    private static int quadrantBit(int cellX, int cellY) {
+        if ((cellX & 1) == 0) {
+            return (cellY & 1) == 0 ? Level.GRASS_00 : Level.GRASS_01;
+        } else {
+            return (cellY & 1) == 0 ? Level.GRASS_10 : Level.GRASS_11;
+        }
+    }
+
+    /** @return corners of the route which covers all grass of the level, starting from the player position */
+    public static IntArray planRoute(Level level) {
+        final int cellsX = level.width * 2;
+        final int cellsY = level.height * 2;
+        final int cellCount = cellsX * cellsY;
+
+        // Cell is open when it is traversable, wanted when it also has grass which is not covered yet
+        final boolean[] open = new boolean[cellCount];
+        final boolean[] wanted = new boolean[cellCount];
+        int wantedCount = 0;
+        for (int cellX = 0; cellX < cellsX; cellX++) {
+            for (int cellY = 0; cellY < cellsY; cellY++) {
+                final byte tile = level.tile(cellX >> 1, cellY >> 1);
+                if ((tile & Level.TILE_TRAVERSABLE) == 0) continue;
+                final int cell = cellX * cellsY + cellY;
+                open[cell] = true;
+                if ((tile & quadrantBit(cellX, cellY)) != 0) {
+                    wanted[cell] = true;
+                    wantedCount++;
+                }
+            }
+        }
+
+        final int[] parent = new int[cellCount];
+        final int[] visitedStamp = new int[cellCount];
+        final int[] queue = new int[cellCount];
+        final IntArray path = new IntArray();
+        final IntArray route = new IntArray();
+
+        int current = MathUtils.clamp((int) (level.playerPos.x * 2f), 0, cellsX - 1) * cellsY
+                + MathUtils.clamp((int) (level.playerPos.y * 2f), 0, cellsY - 1);
+        if (wanted[current]) {
+            // Grass is cut only when moving, so the player has to go to the starting cell as well
+            wanted[current] = false;
+            wantedCount--;
+            route.add(current);
+        }
+        int direction = -1;
+
+        for (int stamp = 1; wantedCount > 0; stamp++) {
+            // Breadth first search for nearest wanted cell, going straight first
+            int head = 0, tail = 0;
+            queue[tail++] = current;
+            visitedStamp[current] = stamp;
+            int found = -1;
+            search:
+            while (head < tail) {
+                final int cell = queue[head++];
+                final int cellX = cell / cellsY;
+                final int cellY = cell - cellX * cellsY;
+                for (int i = 0; i < 4; i++) {
+                    final int neighborDirection = direction < 0 ? i : (direction + i) & 3;
+                    final int neighbor;
+                    switch (neighborDirection) {
+                        case 0: if (cellY + 1 >= cellsY) continue; neighbor = cell + 1; break;
+                        case 1: if (cellX + 1 >= cellsX) continue; neighbor = cell + cellsY; break;
+                        case 2: if (cellY == 0) continue; neighbor = cell - 1; break;
+                        default: if (cellX == 0) continue; neighbor = cell - cellsY; break;
+                    }
+                    if (!open[neighbor] || visitedStamp[neighbor] == stamp) continue;
+                    visitedStamp[neighbor] = stamp;
+                    parent[neighbor] = cell;
+                    if (wanted[neighbor]) {
+                        found = neighbor;
+                        break search;
+                    }
+                    queue[tail++] = neighbor;
+                }
+            }
+
+            if (found == -1) {
+                // Rest is unreachable
+                break;
+            }
+
+            path.clear();
+            for (int cell = found; cell != current; cell = parent[cell]) {
+                path.add(cell);
+            }
+            for (int i = path.size - 1; i >= 0; i--) {
+                final int cell = path.get(i);
+                if (wanted[cell]) {
+                    wanted[cell] = false;
+                    wantedCount--;
+                }
+
+                final int step = cell - current;
+                final int stepDirection = step == 1 ? 0 : step == cellsY ? 1 : step == -1 ? 2 : 3;
+                if (stepDirection == direction && route.size > 0) {
+                    // Extend the straight segment
+                    route.set(route.size - 1, cell);
+                } else {
+                    route.add(cell);
+                }
+                direction = stepDirection;
+                current = cell;
+            }
+        }
+        return route;
+    }
+
+    @Override
+    public int input(Simulation simulation) {
+        while (routeIndex < route.size || replan()) {
+            final int cell = route.get(routeIndex);
+            final int cellX = cell / cellsY;
+            final float targetX = (cellX + 0.5f) * 0.5f;
+            final float targetY = ((cell - cellX * cellsY) + 0.5f) * 0.5f;
+            final float toX = targetX - level.playerPos.x;
+            final float toY = targetY - level.playerPos.y;
+            final float distance = (float) Math.sqrt(toX * toX + toY * toY);
+
+            if (simulation.isCollided()) {
+                stuckTicks++;
+            } else {
+                stuckTicks = 0;
+            }
+
+            //noinspection SuspiciousNameCombination
+            final float targetAngle = (float) Math.atan2(toX, toY) * MathUtils.radiansToDegrees;
+            float angleError = (targetAngle - level.playerAngle) % 360f;
+            if (angleError > 180f) angleError -= 360f;
+            else if (angleError < -180f) angleError += 360f;
+
+            final boolean reached = distance < REACH_DISTANCE;
+            if (reached || (distance < REACH_DISTANCE * 3f && Math.abs(angleError) > 90f)
+                    || stuckTicks > MAX_STUCK_TICKS) {
+                if (!reached) {
+                    skippedCorners++;
+                }
+                routeIndex++;
+                stuckTicks = 0;
+                continue;
+            }
+
+            int input = 0;
+            // Turning step of one tick, do not turn when that would overshoot
+            final float turnStep = Simulation.TICK * level.playerRotationSpeed;
+            if (angleError > turnStep * 0.5f) {
+                input |= Simulation.INPUT_LEFT;
+            } else if (angleError < -turnStep * 0.5f) {
+                input |= Simulation.INPUT_RIGHT;
+            }
+            if (Math.abs(angleError) < DRIVE_ANGLE) {
+                input |= Simulation.INPUT_FORWARD;
+            }
+            return input;
+        }
+        return 0;
+    }
+}
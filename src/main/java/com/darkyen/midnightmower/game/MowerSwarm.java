@@ -0,0 +1,170 @@
+package com.darkyen.midnightmower.game;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Many autonomous mowers on one fixed size level, for stress testing the simulation and the renderer.
+ *
+ * State of mowers is kept in parallel arrays. Each tick is done in two phases: first all mowers are moved, in parallel,
+ * and each remembers the grass quadrant it stands on. Then the grass is cut on the calling thread, in order of mowers,
+ * so two mowers on the same quadrant never cut it twice and the result does not depend on the thread count.
+ *
+ * Mowers drive forward and turn a random amount when they hit a wall, or randomly from time to time.
+ */
+public final class MowerSwarm {
+
+    /** Mowers are not worth moving in parallel when there is less of them */
+    private static final int MIN_PARALLEL_MOWERS = 64;
+
+    private static final ThreadLocal<Level.CollisionData> STEP_COLLISION = ThreadLocal.withInitial(Level.CollisionData::new);
+
+    public final Level level;
+    private final long seed;
+    public final int size;
+
+    public final float[] x, y, angle;
+    public final int[] tileX, tileY;
+    /** State before the last tick, for rendering */
+    private final float[] previousX, previousY, previousAngle;
+    private final boolean[] collided;
+    private final int[] turnTicks;
+    private final boolean[] turnLeft;
+    /** GRASS_ bit under each mower after the move phase, 0 if none */
+    private final byte[] cutBit;
+
+    private long ticks = 0;
+    private int lastGrassCut = 0;
+
+    /** Between the state before (0) and after (1) the last tick, used for rendering */
+    public float renderAlpha = 1f;
+
+    /** Create mowers on random traversable tiles of the level. */
+    public MowerSwarm(Level level, int size, long seed) {
+        if (level.isEndless()) {
+            throw new IllegalArgumentException("Endless levels are not supported");
+        }
+        this.level = level;
+        this.seed = seed;
+        this.size = size;
+        x = new float[size];
+        y = new float[size];
+        angle = new float[size];
+        tileX = new int[size];
+        tileY = new int[size];
+        previousX = new float[size];
+        previousY = new float[size];
+        previousAngle = new float[size];
+        collided = new boolean[size];
+        turnTicks = new int[size];
+        turnLeft = new boolean[size];
+        cutBit = new byte[size];
+
+        final int tileCount = level.width * level.height;
+        long pick = 0;
+        for (int i = 0; i < size; i++) {
+            int tile;
+            do {
+                tile = CounterRandom.nextInt(seed, CounterRandom.STREAM_SWARM, pick++, tileCount);
+            } while ((level.tile(tile) & Level.TILE_TRAVERSABLE) == 0);
+            tileX[i] = tile / level.height;
+            tileY[i] = tile % level.height;
+            x[i] = previousX[i] = tileX[i] + 0.5f;
+            y[i] = previousY[i] = tileY[i] + 0.5f;
+            angle[i] = previousAngle[i] = CounterRandom.nextInt(seed, CounterRandom.STREAM_SWARM, pick++, 360);
+        }
+    }
+
+    /** @return amount of grass quadrants cut during the last tick */
+    public int getLastGrassCut() {
+        return lastGrassCut;
+    }
+
+    /**
+     * Advance all mowers by {@link Simulation#TICK}.
+     * @param pool to move the mowers in, null to do everything on the calling thread. The result is the same.
+     */
+    public void tick(ForkJoinPool pool) {
+        final long tick = ticks++;
+        ColumnWork.run(pool, size, 1, MIN_PARALLEL_MOWERS, (from, to) -> {
+            final Level.CollisionData collision = STEP_COLLISION.get();
+            for (int i = from; i < to; i++) {
+                move(i, tick, collision);
+            }
+            return 0;
+        });
+
+        final Level level = this.level;
+        final byte[] cutBit = this.cutBit;
+        int grassCut = 0;
+        for (int i = 0; i < size; i++) {
+            if (cutBit[i] != 0 && level.cutGrass(tileX[i], tileY[i], cutBit[i])) {
+                grassCut++;
+            }
+        }
+        lastGrassCut = grassCut;
+    }
+
+    private void move(int i, long tick, Level.CollisionData collision) {
+        final Level level = this.level;
+        previousX[i] = x[i];
+        previousY[i] = y[i];
+        previousAngle[i] = angle[i];
+
+        if (turnTicks[i] == 0) {
+            final long random = CounterRandom.bits(seed, CounterRandom.STREAM_SWARM, tick * size + i);
+            if (collided[i] || (random & 0xFFFF) % 600 == 0) {
+                turnTicks[i] = 20 + (int) ((random >>> 16) % 200);
+                turnLeft[i] = (random & (1L << 40)) != 0;
+            }
+        }
+
+        // Same movement as the player, see Simulation.tick
+        final float step = level.playerSpeed * Simulation.TICK;
+        final double angleRad = Math.toRadians(angle[i]);
+        float byX = (float) (step * Math.sin(angleRad));
+        float byY = (float) (step * Math.cos(angleRad));
+        level.traceMove(x[i], y[i], tileX[i], tileY[i], byX, byY, collision);
+        collided[i] = collision.collision != Level.CollisionData.NO_COLLISION;
+        if (collided[i]) {
+            // Slide
+            final float remaining = 1f - collision.distanceTravelled / step;
+            if (collision.collision == Level.CollisionData.COLLIDED_CROSSING_X) {
+                byX = 0f;
+                byY *= remaining;
+            } else {
+                byX *= remaining;
+                byY = 0f;
+            }
+            if (byX != 0f || byY != 0f) {
+                level.traceMove(collision.x, collision.y, collision.tileX, collision.tileY, byX, byY, collision);
+            }
+        }
+        x[i] = collision.x;
+        y[i] = collision.y;
+        tileX[i] = collision.tileX;
+        tileY[i] = collision.tileY;
+
+        if (turnTicks[i] > 0) {
+            turnTicks[i]--;
+            final float turnAngle = Simulation.TICK * level.playerRotationSpeed;
+            angle[i] += turnLeft[i] ? turnAngle : -turnAngle;
+        }
+
+        cutBit[i] = level.traversable(tileX[i], tileY[i]) ? Level.grassBitAt(x[i], y[i], tileX[i], tileY[i]) : 0;
+    }
+
+    /** @return x of the mower to render */
+    public float renderX(int i) {
+        return previousX[i] + (x[i] - previousX[i]) * renderAlpha;
+    }
+
+    /** @return y of the mower to render */
+    public float renderY(int i) {
+        return previousY[i] + (y[i] - previousY[i]) * renderAlpha;
+    }
+
+    /** @return angle of the mower to render */
+    public float renderAngle(int i) {
+        return previousAngle[i] + (angle[i] - previousAngle[i]) * renderAlpha;
+    }
+}
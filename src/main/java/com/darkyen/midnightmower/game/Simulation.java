@@ -0,0 +1,169 @@
+package com.darkyen.midnightmower.game;
+
+import com.badlogic.gdx.math.Interpolation;
+import com.badlogic.gdx.math.MathUtils;
+import com.badlogic.gdx.math.Vector2;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Gameplay of a single level, advanced in fixed ticks by player input.
+ * Does not depend on graphics, audio or input backends, so it can run headless.
+ */
+public final class Simulation {
+
+    /** Duration of one tick, in seconds */
+    public static final float TICK = 1f / 120f;
+
+    //region Input bits
+    public static final int INPUT_FORWARD = 1;
+    public static final int INPUT_BACKWARD = 1 << 1;
+    public static final int INPUT_LEFT = 1 << 2;
+    public static final int INPUT_RIGHT = 1 << 3;
+    //endregion
+
+    public final Level level;
+
+    private boolean engineRunning = false;
+    /** Seconds since the engine stalled after completion, -1 if it did not */
+    private float timeSinceEngineStall = -1f;
+    private float levelTime = 0f;
+    private long ticks = 0;
+    private boolean collided = false;
+
+    private final Vector2 tick_movement = new Vector2();
+
+    public Simulation(Level level) {
+        this.level = level;
+    }
+
+    /** @param levelTime of a resumed level, in seconds */
+    public Simulation(Level level, float levelTime) {
+        this.level = level;
+        this.levelTime = levelTime;
+    }
+
+    public void startEngine() {
+        engineRunning = true;
+    }
+
+    public boolean isEngineRunning() {
+        return engineRunning;
+    }
+
+    public float getTimeSinceEngineStall() {
+        return timeSinceEngineStall;
+    }
+
+    /** @return seconds the engine was running */
+    public float getLevelTime() {
+        return levelTime;
+    }
+
+    /** @return amount of ticks simulated so far */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /** @return true if the player hit a wall during last tick */
+    public boolean isCollided() {
+        return collided;
+    }
+
+    /** @return true when all grass is mowed, never for endless levels */
+    public boolean isCompleted() {
+        return level.remainingGrass == 0 && !level.isEndless();
+    }
+
+    public float playerSpeed() {
+        if (engineRunning) {
+            return level.playerSpeed;
+        } else if (timeSinceEngineStall >= 0f) {
+            return level.playerSpeed * MathUtils.clamp( 1f - Interpolation.circleIn.apply(timeSinceEngineStall * 2f), 0f, 1f);
+        } else {
+            return 0f;
+        }
+    }
+
+    /**
+     * Advance the level by one {@link #TICK}.
+     * @param input INPUT_ bits held during this tick
+     * @return true if the level has been completed during this tick
+     */
+    public boolean tick(int input) {
+        final Level level = this.level;
+        final float delta = TICK;
+        ticks++;
+        collided = false;
+
+        if (timeSinceEngineStall != -1f) {
+            timeSinceEngineStall += delta;
+        }
+
+        final float playerSpeed = playerSpeed();
+
+        if (engineRunning) {
+            levelTime  += delta;
+        }
+
+        if (playerSpeed > 0f) {
+
+            final boolean forward = (input & INPUT_FORWARD) != 0;
+            final boolean backward = (input & INPUT_BACKWARD) != 0;
+            if (forward ^ backward) {
+                // Could better handle discrete updates with rotation
+                final Vector2 movement = tick_movement.set(0f, playerSpeed * delta * (forward ? 1f : -0.7f)).rotate(-level.playerAngle);
+                final Level.CollisionData collisionData = level.playerMove(movement);
+                if (collisionData.collision != Level.CollisionData.NO_COLLISION) {
+                    collided = true;
+                    // Slide
+                    movement.mulAdd(movement, -collisionData.distanceTravelled / movement.len());
+                    if (collisionData.collision == Level.CollisionData.COLLIDED_CROSSING_X) {
+                        movement.x = 0f;
+                    } else {
+                        movement.y = 0f;
+                    }
+                    level.playerMove(movement);
+                }
+            }
+
+            final boolean left = (input & INPUT_LEFT) != 0;
+            final boolean right = (input & INPUT_RIGHT) != 0;
+
+            if (left ^ right) {
+                final float turnAngle = delta * level.playerRotationSpeed;
+                level.playerAngle += left ? turnAngle : -turnAngle;
+            }
+        }
+
+        if (engineRunning && level.swarm != null) {
+            level.swarm.tick(ForkJoinPool.commonPool());
+        }
+
+        if (engineRunning && isCompleted()) {
+            engineRunning = false;
+            timeSinceEngineStall = 0f;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Tick until the level is completed, without waiting for real time.
+     * @return amount of ticks simulated, at most maxTicks
+     */
+    public long run(InputSource input, long maxTicks) {
+        for (long tick = 0; tick < maxTicks; tick++) {
+            if (tick(input.input(this))) {
+                return tick + 1;
+            }
+        }
+        return maxTicks;
+    }
+
+    /** Provides input for each tick, for example from a script or a recording. */
+    public interface InputSource {
+        /** @return INPUT_ bits for the next tick of the simulation */
+        int input(Simulation simulation);
+    }
+}
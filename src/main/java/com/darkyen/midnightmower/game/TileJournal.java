@@ -0,0 +1,78 @@
+package com.darkyen.midnightmower.game;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Ring buffer of coordinates of changed tiles, so that consumers of the level can update only what has changed.
+ *
+ * There is a single writer (the thread which plays the level) and any amount of consumers, each with its own {@link Cursor}.
+ * Consumers can be on other threads, nothing is locked. When a consumer falls behind by more than the capacity,
+ * the changes it missed are lost and it is told to refresh everything instead.
+ */
+public final class TileJournal {
+
+    private final AtomicLongArray entries;
+    private final int capacity;
+    private final int mask;
+    /** Amount of entries ever written, published after the entry is written */
+    private final AtomicLong written = new AtomicLong();
+
+    /** @param capacity rounded up to power of two */
+    public TileJournal(int capacity) {
+        final int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.entries = new AtomicLongArray(size);
+        this.capacity = size;
+        this.mask = size - 1;
+    }
+
+    /** Record change of the tile. Must be called only from the writer thread. */
+    public void add(int x, int y) {
+        final long position = written.get();
+        entries.set((int) position & mask, ((long) x << 32) | (y & 0xFFFF_FFFFL));
+        written.set(position + 1);
+    }
+
+    /** @return new cursor, which will see only changes added after this call */
+    public Cursor newCursor() {
+        final Cursor cursor = new Cursor();
+        cursor.position = written.get();
+        return cursor;
+    }
+
+    /**
+     * Pass all changes which the cursor did not see yet to the consumer, in order in which they were added.
+     * The same tile may be reported multiple times.
+     * @return true if all changes were passed, false if some were lost and the consumer should refresh everything
+     */
+    public boolean drain(Cursor cursor, TileConsumer consumer) {
+        final long end = written.get();
+        long position = cursor.position;
+        cursor.position = end;
+        if (end - position > capacity) {
+            return false;
+        }
+
+        for (; position < end; position++) {
+            final long entry = entries.get((int) position & mask);
+            // Writer may have reached this entry again, then it could have been overwritten before the read
+            if (written.get() - position >= capacity) {
+                return false;
+            }
+            consumer.changed((int) (entry >> 32), (int) entry);
+        }
+        return true;
+    }
+
+    public interface TileConsumer {
+        void changed(int x, int y);
+    }
+
+    /** Read position of a single consumer. */
+    public static final class Cursor {
+        private long position;
+
+        private Cursor() {
+        }
+    }
+}
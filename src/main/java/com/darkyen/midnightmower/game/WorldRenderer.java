@@ -1,21 +1,30 @@
 package com.darkyen.midnightmower.game;
 
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.Camera;
 import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
 import com.darkyen.midnightmower.gl.Environment;
 import com.darkyen.midnightmower.gl.Model;
+import com.darkyen.midnightmower.gl.ModelDrawer;
+import com.darkyen.midnightmower.gl.Shader;
 
 /**
  *
  */
 public final class WorldRenderer {
 
+    /** Bounding sphere of the lawn mower model */
+    private static final float MOWER_RADIUS = 0.5f;
+
     private static Model[] GRASS = {
             Models.TallGrass01,
             Models.TallGrass02,
     };
 
+    /** Must match grass-vert.glsl */
     private static Model pickGrass(int x, int y, byte tile) {
-        return GRASS[((31 ^ tile) * x + y) % GRASS.length];
+        return GRASS[Math.floorMod((31 ^ tile) * x + y, GRASS.length)];
     }
 
     private static int rotation(int x, int y, byte tile) {
@@ -23,117 +32,219 @@ public final class WorldRenderer {
     }
 
     private static float scale(int x, int y, byte tile) {
-        return ((((31 ^ tile) * x + y) % 100) / 100f) * 0.4f + 0.8f;
+        return (Math.floorMod((31 ^ tile) * x + y, 100) / 100f) * 0.4f + 0.8f;
     }
 
 
-    public static void render(Level level, Environment environment) {
+    /** Static terrain of the last rendered fixed size level */
+    private static BakedTerrain bakedTerrain = null;
+    /** Grass of the last rendered fixed size level */
+    private static GrassField grassField = null;
+    private static Shader grassShader = null;
+    /** Retained scene of the last rendered endless level */
+    private static EndlessScene endlessScene = null;
+
+    //region Statistics of the last render
+    public static int chunksVisible, chunksTotal;
+    //endregion
+
+    /**
+     * Render the part of the level which is in the camera frustum and not further than drawDistance.
+     * @param camera which the environment uses
+     */
+    public static void render(Level level, Environment environment, Camera camera, float drawDistance) {
         final Vector3 position = new Vector3();
+        int chunksVisible = 0, chunksTotal = 0;
 
-        for (int x = -1; x <= level.width; x++) {
-            for (int y = -1; y <= level.height; y++) {
-                final boolean traversable = level.traversable(x, y);;
-
-                if (traversable) {
-                    position.x = x + 0.5f;
-                    position.y = 0f;
-                    position.z = y + 0.5f;
-                    environment.draw(Models.GrassTile, position);
-
-                    final byte grass = level.tileGrass[x][y];
-                    if ((grass & Level.GRASS_00) != 0) {
-                        position.x = x + 0.25f;
-                        position.y = 0f;
-                        position.z = y + 0.25f;
-                        environment.draw(pickGrass(x, y, Level.GRASS_00), position, rotation(x, y, Level.GRASS_00), scale(x, y, Level.GRASS_00));
-                    }
+        if (level.endless != null) {
+            EndlessScene endlessScene = WorldRenderer.endlessScene;
+            if (endlessScene == null || endlessScene.level != level) {
+                if (endlessScene != null) {
+                    endlessScene.dispose();
+                }
+                WorldRenderer.endlessScene = endlessScene = new EndlessScene(level, environment);
+            }
+            // Drawn by the environment
+            endlessScene.update(camera, drawDistance);
+            chunksVisible = endlessScene.chunksVisible;
+            chunksTotal = endlessScene.chunksTotal;
+        } else {
+            if (endlessScene != null) {
+                endlessScene.dispose();
+                endlessScene = null;
+            }
 
-                    if ((grass & Level.GRASS_10) != 0) {
-                        position.x = x + 0.75f;
-                        position.y = 0f;
-                        position.z = y + 0.25f;
-                        environment.draw(pickGrass(x, y, Level.GRASS_10), position, rotation(x, y, Level.GRASS_10), scale(x, y, Level.GRASS_10));
-                    }
+            BakedTerrain bakedTerrain = WorldRenderer.bakedTerrain;
+            if (bakedTerrain == null || bakedTerrain.level != level) {
+                if (bakedTerrain != null) {
+                    bakedTerrain.dispose();
+                }
+                WorldRenderer.bakedTerrain = bakedTerrain = new BakedTerrain(level);
+            }
 
-                    if ((grass & Level.GRASS_01) != 0) {
-                        position.x = x + 0.25f;
-                        position.y = 0f;
-                        position.z = y + 0.75f;
-                        environment.draw(pickGrass(x, y, Level.GRASS_01), position, rotation(x, y, Level.GRASS_01), scale(x, y, Level.GRASS_01));
-                    }
+            // Grass is drawn at once over the rectangle of visible chunks
+            int grassFromChunkX = Integer.MAX_VALUE, grassFromChunkY = Integer.MAX_VALUE;
+            int grassToChunkX = Integer.MIN_VALUE, grassToChunkY = Integer.MIN_VALUE;
+            for (int chunkX = 0; chunkX < bakedTerrain.chunksX; chunkX++) {
+                for (int chunkY = 0; chunkY < bakedTerrain.chunksY; chunkY++) {
+                    chunksTotal++;
+                    if (!visible(camera, drawDistance, bakedTerrain.getChunkBounds(chunkX, chunkY))) continue;
+                    chunksVisible++;
+
+                    environment.draw(bakedTerrain.getChunk(chunkX, chunkY));
+
+                    grassFromChunkX = Math.min(grassFromChunkX, chunkX);
+                    grassFromChunkY = Math.min(grassFromChunkY, chunkY);
+                    grassToChunkX = Math.max(grassToChunkX, chunkX + 1);
+                    grassToChunkY = Math.max(grassToChunkY, chunkY + 1);
+                }
+            }
 
-                    if ((grass & Level.GRASS_11) != 0) {
-                        position.x = x + 0.75f;
-                        position.y = 0f;
-                        position.z = y + 0.75f;
-                        environment.draw(pickGrass(x, y, Level.GRASS_11), position, rotation(x, y, Level.GRASS_11), scale(x, y, Level.GRASS_11));
+            if (chunksVisible > 0) {
+                GrassField grassField = WorldRenderer.grassField;
+                if (grassField == null || grassField.level != level) {
+                    if (grassField != null) {
+                        grassField.dispose();
                     }
+                    WorldRenderer.grassField = grassField = new GrassField(level);
+                }
+                Shader grassShader = WorldRenderer.grassShader;
+                if (grassShader == null) {
+                    WorldRenderer.grassShader = grassShader = new Shader(Gdx.files.internal("shaders/grass-vert.glsl"), Gdx.files.internal("shaders/world-frag.glsl"));
+                }
 
-                } else {
-                    position.x = x + 0.5f;
-                    position.z = y + 0.5f;
+                environment.beginCustom(grassShader);
+                grassField.draw(grassShader, GRASS,
+                        grassFromChunkX * BakedTerrain.CHUNK_SIZE, grassFromChunkY * BakedTerrain.CHUNK_SIZE,
+                        Math.min(grassToChunkX * BakedTerrain.CHUNK_SIZE, level.width), Math.min(grassToChunkY * BakedTerrain.CHUNK_SIZE, level.height));
+                environment.endCustom(grassShader);
+            }
+        }
+        WorldRenderer.chunksVisible = chunksVisible;
+        WorldRenderer.chunksTotal = chunksTotal;
 
-                    if (level.traversable(x+1, y)) {
-                        position.y = -1f;
-                        environment.draw(Models.Cliff, position, 90f);
-                        position.y = 0f;
-                        environment.draw(Models.Overhang, position, 90f);
-                    }
-                    if (level.traversable(x-1, y)) {
-                        position.y = -1f;
-                        environment.draw(Models.Cliff, position, 270f);
-                        position.y = 0f;
-                        environment.draw(Models.Overhang, position, 270f);
-                    }
-                    if (level.traversable(x, y+1)) {
-                        position.y = -1f;
-                        environment.draw(Models.Cliff, position);
-                        position.y = 0f;
-                        environment.draw(Models.Overhang, position);
-                    }
-                    if (level.traversable(x, y-1)) {
-                        position.y = -1f;
-                        environment.draw(Models.Cliff, position, 180f);
-                        position.y = 0f;
-                        environment.draw(Models.Overhang, position, 180f);
-                    }
+        {
+            position.set(level.renderPlayerPos.x, 0f, level.renderPlayerPos.y);
+            environment.draw(Models.LawnMower, position, level.renderPlayerAngle);
+        }
 
-                    // Corners
-                    if (level.traversable(x+1, y+1) && !level.traversable(x+1, y) && !level.traversable(x, y+1)) {
-                        position.y = -1f;
-                        environment.draw(Models.CliffCorner, position, 90f);
-                        position.y = 0f;
-                        environment.draw(Models.OverhangCorner, position, 90f);
-                    }
+        final MowerSwarm swarm = level.swarm;
+        if (swarm != null) {
+            // All go to the same instanced batch as the player
+            for (int i = 0; i < swarm.size; i++) {
+                position.set(swarm.renderX(i), 0f, swarm.renderY(i));
+                if (position.dst2(camera.position) > drawDistance * drawDistance
+                        || !camera.frustum.sphereInFrustum(position, MOWER_RADIUS)) continue;
+                environment.draw(Models.LawnMower, position, swarm.renderAngle(i));
+            }
+        }
+    }
 
-                    if (level.traversable(x-1, y+1) && !level.traversable(x-1, y) && !level.traversable(x, y+1)) {
-                        position.y = -1f;
-                        environment.draw(Models.CliffCorner, position);
-                        position.y = 0f;
-                        environment.draw(Models.OverhangCorner, position);
-                    }
+    /** @return true if the bounds are in the frustum of the camera and not further than drawDistance from it */
+    static boolean visible(Camera camera, float drawDistance, BoundingBox bounds) {
+        final Vector3 eye = camera.position;
+        final float dx = Math.max(Math.max(bounds.min.x - eye.x, eye.x - bounds.max.x), 0f);
+        final float dy = Math.max(Math.max(bounds.min.y - eye.y, eye.y - bounds.max.y), 0f);
+        final float dz = Math.max(Math.max(bounds.min.z - eye.z, eye.z - bounds.max.z), 0f);
+        return dx * dx + dy * dy + dz * dz <= drawDistance * drawDistance && camera.frustum.boundsInFrustum(bounds);
+    }
 
-                    if (level.traversable(x+1, y-1) && !level.traversable(x+1, y) && !level.traversable(x, y-1)) {
-                        position.y = -1f;
-                        environment.draw(Models.CliffCorner, position, 180f);
-                        position.y = 0f;
-                        environment.draw(Models.OverhangCorner, position, 180f);
-                    }
+    /** Ground of a traversable tile, never changes */
+    static void renderGround(ModelDrawer drawer, Vector3 position, int x, int y) {
+        position.x = x + 0.5f;
+        position.y = 0f;
+        position.z = y + 0.5f;
+        drawer.draw(Models.GrassTile, position);
+    }
 
-                    if (level.traversable(x-1, y-1) && !level.traversable(x-1, y) && !level.traversable(x, y-1)) {
-                        position.y = -1f;
-                        environment.draw(Models.CliffCorner, position, 270f);
-                        position.y = 0f;
-                        environment.draw(Models.OverhangCorner, position, 270f);
-                    }
-                }
-            }
+    /** One quadrant of the grass of a traversable tile */
+    static void renderGrass(ModelDrawer drawer, Vector3 position, int x, int y, byte grassBit) {
+        position.x = x + ((grassBit & (Level.GRASS_10 | Level.GRASS_11)) != 0 ? 0.75f : 0.25f);
+        position.y = 0f;
+        position.z = y + ((grassBit & (Level.GRASS_01 | Level.GRASS_11)) != 0 ? 0.75f : 0.25f);
+        drawer.draw(pickGrass(x, y, grassBit), position, rotation(x, y, grassBit), scale(x, y, grassBit));
+    }
+
+    /** @param neighbors {@link BorderTiles} neighbor bits of the non traversable tile */
+    static void renderBorder(ModelDrawer drawer, Vector3 position, int x, int y, int neighbors) {
+        if (neighbors == 0) {
+            return;
+        }
+        position.x = x + 0.5f;
+        position.z = y + 0.5f;
+
+        if ((neighbors & BorderTiles.RIGHT) != 0) {
+            position.y = -1f;
+            drawer.draw(Models.Cliff, position, 90f);
+            position.y = 0f;
+            drawer.draw(Models.Overhang, position, 90f);
+        }
+        if ((neighbors & BorderTiles.LEFT) != 0) {
+            position.y = -1f;
+            drawer.draw(Models.Cliff, position, 270f);
+            position.y = 0f;
+            drawer.draw(Models.Overhang, position, 270f);
+        }
+        if ((neighbors & BorderTiles.UP) != 0) {
+            position.y = -1f;
+            drawer.draw(Models.Cliff, position);
+            position.y = 0f;
+            drawer.draw(Models.Overhang, position);
+        }
+        if ((neighbors & BorderTiles.DOWN) != 0) {
+            position.y = -1f;
+            drawer.draw(Models.Cliff, position, 180f);
+            position.y = 0f;
+            drawer.draw(Models.Overhang, position, 180f);
         }
 
-        {
-            position.set(level.playerPos.x, 0f, level.playerPos.y);
-            environment.draw(Models.LawnMower, position, level.playerAngle);
+        // Corners
+        if ((neighbors & (BorderTiles.RIGHT_UP | BorderTiles.RIGHT | BorderTiles.UP)) == BorderTiles.RIGHT_UP) {
+            position.y = -1f;
+            drawer.draw(Models.CliffCorner, position, 90f);
+            position.y = 0f;
+            drawer.draw(Models.OverhangCorner, position, 90f);
+        }
+
+        if ((neighbors & (BorderTiles.LEFT_UP | BorderTiles.LEFT | BorderTiles.UP)) == BorderTiles.LEFT_UP) {
+            position.y = -1f;
+            drawer.draw(Models.CliffCorner, position);
+            position.y = 0f;
+            drawer.draw(Models.OverhangCorner, position);
+        }
+
+        if ((neighbors & (BorderTiles.RIGHT_DOWN | BorderTiles.RIGHT | BorderTiles.DOWN)) == BorderTiles.RIGHT_DOWN) {
+            position.y = -1f;
+            drawer.draw(Models.CliffCorner, position, 180f);
+            position.y = 0f;
+            drawer.draw(Models.OverhangCorner, position, 180f);
+        }
+
+        if ((neighbors & (BorderTiles.LEFT_DOWN | BorderTiles.LEFT | BorderTiles.DOWN)) == BorderTiles.LEFT_DOWN) {
+            position.y = -1f;
+            drawer.draw(Models.CliffCorner, position, 270f);
+            position.y = 0f;
+            drawer.draw(Models.OverhangCorner, position, 270f);
         }
     }
 
+    /** Release the baked terrain and grass. */
+    public static void dispose() {
+        if (bakedTerrain != null) {
+            bakedTerrain.dispose();
+            bakedTerrain = null;
+        }
+        if (endlessScene != null) {
+            endlessScene.dispose();
+            endlessScene = null;
+        }
+        if (grassField != null) {
+            grassField.dispose();
+            grassField = null;
+        }
+        if (grassShader != null) {
+            grassShader.dispose();
+            grassShader = null;
+        }
+    }
 }
@@ -7,15 +7,17 @@ import com.badlogic.gdx.math.Matrix4;
 import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.utils.Array;
 import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.FloatArray;
 import com.badlogic.gdx.utils.ObjectMap;
 import com.badlogic.gdx.utils.Pool;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
  *
  */
-public final class Environment implements Disposable {
+public final class Environment implements ModelDrawer, Disposable {
 
     private final Camera camera;
 
@@ -30,7 +32,12 @@ public final class Environment implements Disposable {
     private final Array<Light> pointLights = new Array<>();
     private boolean dirty = true;
 
-    private final ObjectMap<Model, Array<Matrix4>> batchedModels = new ObjectMap<>();
+    /** Instances of instanced models, in {@link Model#drawInstanced(Shader, float[], int)} format */
+    private final ObjectMap<Model, FloatArray> batchedModels = new ObjectMap<>();
+    /** Retained instances, drawn in every frame */
+    private final ObjectMap<Model, SceneModel> sceneModels = new ObjectMap<>();
+    private final Array<SceneModel> sceneModelList = new Array<>(false, 16, SceneModel.class);
+    private int sceneInstances = 0;
 
     public Environment(Camera camera) {
         this.camera = camera;
@@ -109,51 +116,121 @@ public final class Environment implements Disposable {
         dirty = false;
     }
 
+    /** Draw immediately, baked geometry does not need batching. */
+    public void draw(StaticBatch batch) {
+        batch.draw(shader);
+    }
+
+    /**
+     * Bind a custom shader, which uses world-frag.glsl, to draw something which can't be drawn as models.
+     * Call between {@link #begin()} and {@link #end()}, then {@link #endCustom(Shader)} when done with it.
+     */
+    public void beginCustom(Shader custom) {
+        shader.unbind();
+        bindShader(custom, custom.uniformBlock("Environment"), false);
+    }
+
+    public void endCustom(Shader custom) {
+        custom.unbind();
+        bindShader(shader, environmentBlock, false);
+    }
+
+    @Override
     public void draw(Model model, Vector3 position) {
-        final Matrix4 transform = MATRIX_4_POOL.obtain().setToTranslation(position);
-        draw(model, transform);
+        if (model.instanced) {
+            batch(model, position, 0f, 1f);
+        } else {
+            final Matrix4 transform = MATRIX_4_POOL.obtain().setToTranslation(position);
+            draw(model, transform);
+        }
     }
 
+    @Override
     public void draw(Model model, Vector3 position, float yDegrees) {
-        final Matrix4 transform = MATRIX_4_POOL.obtain().idt();
-        transform.translate(position);
-        transform.rotate(Vector3.Y, yDegrees);
-        draw(model, transform);
+        if (model.instanced) {
+            batch(model, position, yDegrees, 1f);
+        } else {
+            final Matrix4 transform = MATRIX_4_POOL.obtain().idt();
+            transform.translate(position);
+            transform.rotate(Vector3.Y, yDegrees);
+            draw(model, transform);
+        }
     }
 
+    @Override
     public void draw(Model model, Vector3 position, float yDegrees, float scale) {
-        final Matrix4 transform = MATRIX_4_POOL.obtain().idt();
-        transform.translate(position);
-        transform.rotate(Vector3.Y, yDegrees);
-        transform.scale(scale, scale, scale);
-        draw(model, transform);
-    }
-
-    private void draw(Model model, Matrix4 pooledTransform) {
         if (model.instanced) {
-            Array<Matrix4> models = batchedModels.get(model);
-            if (models == null) {
-                models = ARRAY_MATRIX_4_POOL.obtain();
-                batchedModels.put(model, models);
-            }
-            models.add(pooledTransform);
+            batch(model, position, yDegrees, scale);
         } else {
-            model.draw(shader, pooledTransform);
-            MATRIX_4_POOL.free(pooledTransform);
+            final Matrix4 transform = MATRIX_4_POOL.obtain().idt();
+            transform.translate(position);
+            transform.rotate(Vector3.Y, yDegrees);
+            transform.scale(scale, scale, scale);
+            draw(model, transform);
+        }
+    }
+
+    /**
+     * Add an instance of the instanced model to the retained scene. It is drawn in every frame, between the batched
+     * instances at {@link #end()}, until removed, and costs nothing on the CPU while it does not change.
+     * @return handle to change or remove the instance with
+     */
+    public SceneInstance add(Model model, Vector3 position, float yDegrees, float scale) {
+        if (!model.instanced) {
+            throw new IllegalArgumentException("Only instanced models can be added to the scene");
+        }
+        SceneModel sceneModel = sceneModels.get(model);
+        if (sceneModel == null) {
+            sceneModel = new SceneModel(model);
+            sceneModels.put(model, sceneModel);
+            sceneModelList.add(sceneModel);
         }
+        return new SceneInstance(sceneModel, position, yDegrees, scale);
+    }
+
+    public SceneInstance add(Model model, Vector3 position, float yDegrees) {
+        return add(model, position, yDegrees, 1f);
+    }
+
+    public SceneInstance add(Model model, Vector3 position) {
+        return add(model, position, 0f, 1f);
+    }
+
+    /** @return amount of visible instances of the retained scene */
+    public int getSceneInstances() {
+        return sceneInstances;
+    }
+
+    private void batch(Model model, Vector3 position, float yDegrees, float scale) {
+        FloatArray instances = batchedModels.get(model);
+        if (instances == null) {
+            instances = FLOAT_ARRAY_POOL.obtain();
+            batchedModels.put(model, instances);
+        }
+        final float[] items = instances.ensureCapacity(Model.INSTANCE_SIZE);
+        Model.putInstance(items, instances.size, position, yDegrees, scale);
+        instances.size += Model.INSTANCE_SIZE;
+    }
+
+    private void draw(Model model, Matrix4 pooledTransform) {
+        model.draw(shader, pooledTransform);
+        MATRIX_4_POOL.free(pooledTransform);
     }
 
     public void end() {
         shader.unbind();
 
-        if (batchedModels.size != 0) {
+        if (batchedModels.size != 0 || sceneInstances != 0) {
             bindShader(shaderInstanced, environmentBlockInstanced, false);
 
-            for (ObjectMap.Entry<Model, Array<Matrix4>> entry : batchedModels.entries()) {
-                entry.key.draw(shaderInstanced, entry.value);
-                MATRIX_4_POOL.freeAll(entry.value);
-                entry.value.size = 0;
-                ARRAY_MATRIX_4_POOL.free(entry.value);
+            for (SceneModel sceneModel : sceneModelList) {
+                sceneModel.draw(shaderInstanced);
+            }
+
+            for (ObjectMap.Entry<Model, FloatArray> entry : batchedModels.entries()) {
+                entry.key.drawInstanced(shaderInstanced, entry.value.items, entry.value.size / Model.INSTANCE_SIZE);
+                entry.value.clear();
+                FLOAT_ARRAY_POOL.free(entry.value);
             }
             batchedModels.clear();
             shaderInstanced.unbind();
@@ -163,6 +240,77 @@ public final class Environment implements Disposable {
     public void dispose() {
         end();
         shader.dispose();
+        for (SceneModel sceneModel : sceneModelList) {
+            sceneModel.instances.dispose();
+        }
+    }
+
+    /** Visible retained instances of one model, packed for drawing. */
+    final class SceneModel {
+        private final Model model;
+        private final InstanceBuffer instances = new InstanceBuffer();
+        /** Data of visible instances, in their order */
+        private float[] data = new float[64 * Model.INSTANCE_SIZE];
+        private SceneInstance[] visible = new SceneInstance[64];
+        private int size = 0;
+        /** Range of data which changed since the last upload, in instances */
+        private int dirtyFrom = Integer.MAX_VALUE, dirtyTo = 0;
+
+        private SceneModel(Model model) {
+            this.model = model;
+        }
+
+        private void changed(int index) {
+            dirtyFrom = Math.min(dirtyFrom, index);
+            dirtyTo = Math.max(dirtyTo, index + 1);
+        }
+
+        void show(SceneInstance instance) {
+            if (size == visible.length) {
+                visible = Arrays.copyOf(visible, size * 2);
+                data = Arrays.copyOf(data, size * 2 * Model.INSTANCE_SIZE);
+            }
+            final int index = size++;
+            visible[index] = instance;
+            instance.index = index;
+            System.arraycopy(instance.data, 0, data, index * Model.INSTANCE_SIZE, Model.INSTANCE_SIZE);
+            changed(index);
+            sceneInstances++;
+        }
+
+        void hide(SceneInstance instance) {
+            // Last visible instance takes its place
+            final int index = instance.index;
+            final int last = --size;
+            if (index != last) {
+                final SceneInstance moved = visible[last];
+                visible[index] = moved;
+                moved.index = index;
+                System.arraycopy(data, last * Model.INSTANCE_SIZE, data, index * Model.INSTANCE_SIZE, Model.INSTANCE_SIZE);
+                changed(index);
+            }
+            visible[last] = null;
+            instance.index = -1;
+            sceneInstances--;
+        }
+
+        void update(SceneInstance instance) {
+            System.arraycopy(instance.data, 0, data, instance.index * Model.INSTANCE_SIZE, Model.INSTANCE_SIZE);
+            changed(instance.index);
+        }
+
+        private void draw(Shader shader) {
+            if (size == 0) {
+                return;
+            }
+            if (dirtyFrom < dirtyTo) {
+                final int to = Math.min(dirtyTo, size);
+                instances.update(data, dirtyFrom * Model.INSTANCE_SIZE, to * Model.INSTANCE_SIZE, size * Model.INSTANCE_SIZE);
+                dirtyFrom = Integer.MAX_VALUE;
+                dirtyTo = 0;
+            }
+            model.drawInstanced(shader, instances, size);
+        }
     }
 
     private static final Pool<Matrix4> MATRIX_4_POOL = new Pool<Matrix4>() {
@@ -171,10 +319,10 @@ public final class Environment implements Disposable {
             return new Matrix4();
         }
     };
-    private static final Pool<Array<Matrix4>> ARRAY_MATRIX_4_POOL = new Pool<Array<Matrix4>>() {
+    private static final Pool<FloatArray> FLOAT_ARRAY_POOL = new Pool<FloatArray>() {
         @Override
-        protected Array<Matrix4> newObject() {
-            return new Array<>(false, 64, Matrix4.class);
+        protected FloatArray newObject() {
+            return new FloatArray(64 * Model.INSTANCE_SIZE);
         }
     };
 }
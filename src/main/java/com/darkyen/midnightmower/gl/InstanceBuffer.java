@@ -0,0 +1,61 @@
+package com.darkyen.midnightmower.gl;
+
+import com.badlogic.gdx.Gdx;
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.utils.BufferUtils;
+import com.badlogic.gdx.utils.Disposable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Instance data on the GPU, which outlives a frame and can be shared by all meshes of an instanced model.
+ * Only changed ranges are uploaded. See {@link Mesh#bind(Shader, InstanceBuffer)}.
+ */
+public final class InstanceBuffer implements Disposable {
+
+    private int handle;
+    /** Floats which the GPU buffer can hold */
+    private int capacity = 0;
+    private ByteBuffer update_data = BufferUtils.newUnsafeByteBuffer(64 * Model.INSTANCE_SIZE * 4);
+
+    public InstanceBuffer() {
+        handle = Gdx.gl30.glGenBuffer();
+    }
+
+    public int getHandle() {
+        return handle;
+    }
+
+    /**
+     * Upload floats [from, to) of the data, to the same offset in the buffer.
+     * @param size floats which the buffer must hold, when it has to grow, all data [0, size) is uploaded instead
+     */
+    public void update(float[] data, int from, int to, int size) {
+        final GL20 gl = Gdx.gl30;
+        gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, handle);
+        if (size > capacity) {
+            capacity = Math.max(size, capacity * 2);
+            gl.glBufferData(GL20.GL_ARRAY_BUFFER, capacity * 4, null, GL20.GL_DYNAMIC_DRAW);
+            from = 0;
+            to = size;
+        }
+
+        if (from < to) {
+            final int count = to - from;
+            if (update_data.capacity() < count * 4) {
+                BufferUtils.disposeUnsafeByteBuffer(update_data);
+                update_data = BufferUtils.newUnsafeByteBuffer(count * 4);
+            }
+            BufferUtils.copy(data, update_data, count, from);
+            gl.glBufferSubData(GL20.GL_ARRAY_BUFFER, from * 4, count * 4, update_data);
+        }
+        gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, 0);
+    }
+
+    @Override
+    public void dispose() {
+        Gdx.gl30.glDeleteBuffer(handle);
+        handle = -1;
+        BufferUtils.disposeUnsafeByteBuffer(update_data);
+    }
+}
@@ -26,6 +26,8 @@ public final class Mesh implements Disposable {
     /** Locations of attributes + instancedAttributes */
     private final int[] attributeLocations;
     private int attributeLocationsShaderProgram = -1;
+    /** Buffer which the instanced attributes of the VAO point to */
+    private int attributeInstancesHandle = -1;
 
     //region Vertex data
     private final FloatBuffer vertexBuffer;
@@ -48,9 +50,10 @@ public final class Mesh implements Disposable {
 
     //region Instancing
     private final boolean instanced;
-    private final FloatBuffer instancedBuffer;
+    /** Both grow when more instances are set, see {@link #ensureInstanceCapacity(int)} */
+    private FloatBuffer instancedBuffer;
     /** Managed by bind() */
-    private final ByteBuffer instancedByteBuffer;
+    private ByteBuffer instancedByteBuffer;
     private int instancedBufferHandle;
     private boolean instancedBufferDirty = false;
     private final int instancedBufferUsage;
@@ -60,6 +63,7 @@ public final class Mesh implements Disposable {
         this(attributes, null, staticVertices, maxVertices, staticIndices, maxIndices, true, 0);
     }
 
+    /** @param maxInstances initial capacity of the instance buffer, it grows when more instances are set */
     public Mesh (VertexAttributes attributes, VertexAttributes instancedAttributes, boolean staticVertices, int maxVertices, boolean staticIndices, int maxIndices, boolean staticInstances, int maxInstances) {
         // Vertex init
         this.attributes = attributes;
@@ -174,8 +178,28 @@ public final class Mesh implements Disposable {
         indexByteBuffer.position(0);
     }
 
+    /** Grow the instance buffers to hold at least floatCount floats, keeping their content. */
+    private void ensureInstanceCapacity(int floatCount) {
+        final ByteBuffer oldByteBuffer = instancedByteBuffer;
+        if (floatCount * 4 <= oldByteBuffer.capacity()) {
+            return;
+        }
+        final int oldLimit = instancedBuffer.limit();
+        final ByteBuffer newByteBuffer = BufferUtils.newUnsafeByteBuffer(Math.max(floatCount * 4, oldByteBuffer.capacity() * 2));
+        oldByteBuffer.position(0);
+        oldByteBuffer.limit(oldByteBuffer.capacity());
+        newByteBuffer.put(oldByteBuffer);
+        newByteBuffer.position(0);
+        BufferUtils.disposeUnsafeByteBuffer(oldByteBuffer);
+
+        instancedByteBuffer = newByteBuffer;
+        instancedBuffer = newByteBuffer.asFloatBuffer();
+        instancedBuffer.limit(oldLimit);
+    }
+
     public void setInstanceData (float[] data, int offset, int count) {
         assert instanced;
+        ensureInstanceCapacity(count);
         instancedBufferDirty = true;
         BufferUtils.copy(data, instancedByteBuffer, count, offset << 2);
         instancedBuffer.position(0);
@@ -184,6 +208,7 @@ public final class Mesh implements Disposable {
 
     public void setInstanceDataCount(int floatCount) {
         assert instanced;
+        ensureInstanceCapacity(floatCount);
         instancedBufferDirty = true;
 
         instancedBuffer.position(0);
@@ -192,6 +217,7 @@ public final class Mesh implements Disposable {
 
     public void putInstanceData (int targetOffset, float[] data, int offset, int count) {
         assert instanced;
+        ensureInstanceCapacity(targetOffset + count);
         instancedBufferDirty = true;
 
         instancedByteBuffer.position(targetOffset * 4);
@@ -201,7 +227,25 @@ public final class Mesh implements Disposable {
 
     public void bind (Shader shader) {
         final GL30 gl = Gdx.gl30;
+        bind(gl, shader, instancedBufferHandle);
 
+        // Instanced check
+        if (instancedBufferDirty) {
+            instancedByteBuffer.limit(instancedBuffer.limit() * 4);
+            gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, instancedBufferHandle);
+            gl.glBufferData(GL20.GL_ARRAY_BUFFER, instancedByteBuffer.limit(), instancedByteBuffer, instancedBufferUsage);
+            gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, 0);
+            instancedBufferDirty = false;
+        }
+    }
+
+    /** Bind with instanced attributes taken from the buffer, instead of the instance data of this mesh. */
+    public void bind (Shader shader, InstanceBuffer instances) {
+        assert instanced;
+        bind(Gdx.gl30, shader, instances.getHandle());
+    }
+
+    private void bind (GL30 gl, Shader shader, int instancesHandle) {
         gl.glBindVertexArray(vaoHandle);
 
         // VAO Check
@@ -232,7 +276,6 @@ public final class Mesh implements Disposable {
 
             // Instanced attributes
             if (instanced) {
-                gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, instancedBufferHandle);
                 for (VertexAttribute instancedAttribute : instancedAttributes) {
                     final int location = gl.glGetAttribLocation(shader.getProgram(), instancedAttribute.alias);
                     attributeLocations[attribLocationIndex++] = location;
@@ -241,11 +284,14 @@ public final class Mesh implements Disposable {
                     }
 
                     gl.glEnableVertexAttribArray(location);
-                    gl.glVertexAttribPointer(location, instancedAttribute.numComponents, instancedAttribute.type, instancedAttribute.normalized, instancedAttributes.vertexSize, instancedAttribute.offset);
                     gl.glVertexAttribDivisor(location, 1);
                 }
+                pointInstancedAttributes(gl, instancesHandle);
             }
 
+            gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, 0);
+        } else if (instanced && attributeInstancesHandle != instancesHandle) {
+            pointInstancedAttributes(gl, instancesHandle);
             gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, 0);
         }
 
@@ -258,15 +304,6 @@ public final class Mesh implements Disposable {
             vertexBufferDirty = false;
         }
 
-        // Instanced check
-        if (instancedBufferDirty) {
-            instancedByteBuffer.limit(instancedBuffer.limit() * 4);
-            gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, instancedBufferHandle);
-            gl.glBufferData(GL20.GL_ARRAY_BUFFER, instancedByteBuffer.limit(), instancedByteBuffer, instancedBufferUsage);
-            gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, 0);
-            instancedBufferDirty = false;
-        }
-
         // Indices check & bind
         if (indexBufferHandle != -1) {
             gl.glBindBuffer(GL20.GL_ELEMENT_ARRAY_BUFFER, indexBufferHandle);
@@ -279,6 +316,20 @@ public final class Mesh implements Disposable {
         }
     }
 
+    /** VAO must be bound, leaves the instances buffer bound */
+    private void pointInstancedAttributes (GL30 gl, int instancesHandle) {
+        gl.glBindBuffer(GL20.GL_ARRAY_BUFFER, instancesHandle);
+        int attribLocationIndex = attributes.size();
+        for (VertexAttribute instancedAttribute : instancedAttributes) {
+            final int location = attributeLocations[attribLocationIndex++];
+            if (location == -1) {
+                continue;
+            }
+            gl.glVertexAttribPointer(location, instancedAttribute.numComponents, instancedAttribute.type, instancedAttribute.normalized, instancedAttributes.vertexSize, instancedAttribute.offset);
+        }
+        attributeInstancesHandle = instancesHandle;
+    }
+
     public void unbind () {
         Gdx.gl30.glBindVertexArray(0);
     }
@@ -298,8 +349,8 @@ public final class Mesh implements Disposable {
         }
     }
 
+    /** Mesh without instanced attributes can be drawn instanced as well, when the shader places instances by gl_InstanceID */
     public void renderInstanced (int primitiveType, int offset, int count, int instances) {
-        assert instanced;
         assert offset >= 0;
         assert count > 0;
         assert indexBuffer == null || offset < getIndexCount();
@@ -333,6 +384,13 @@ public final class Mesh implements Disposable {
         indexBufferHandle = 0;
 
         BufferUtils.disposeUnsafeByteBuffer(indexByteBuffer);
+
+        // Dispose instances
+        if (instanced) {
+            gl.glDeleteBuffer(instancedBufferHandle);
+            instancedBufferHandle = 0;
+            BufferUtils.disposeUnsafeByteBuffer(instancedByteBuffer);
+        }
     }
 
 }
@@ -5,8 +5,10 @@ import com.badlogic.gdx.graphics.GL20;
 import com.badlogic.gdx.graphics.VertexAttribute;
 import com.badlogic.gdx.graphics.VertexAttributes;
 import com.badlogic.gdx.graphics.g3d.model.data.*;
+import com.badlogic.gdx.math.MathUtils;
 import com.badlogic.gdx.math.Matrix3;
 import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Vector3;
 import com.badlogic.gdx.utils.Array;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,20 +21,20 @@ public final class Model {
     private static final Logger LOG = LoggerFactory.getLogger(Model.class);
 
     private static final VertexAttributes INSTANCED_ATTRIBUTES = new VertexAttributes(
-            new VertexAttribute(VertexAttributes.Usage.Position, 4, GL20.GL_FLOAT, false, "modelMat1"),
-            new VertexAttribute(VertexAttributes.Usage.Position, 4, GL20.GL_FLOAT, false, "modelMat2"),
-            new VertexAttribute(VertexAttributes.Usage.Position, 4, GL20.GL_FLOAT, false, "modelMat3"),
-            new VertexAttribute(VertexAttributes.Usage.Position, 4, GL20.GL_FLOAT, false, "modelMat4"),
-            new VertexAttribute(VertexAttributes.Usage.Normal, 3, GL20.GL_FLOAT, false, "normalMat1"),
-            new VertexAttribute(VertexAttributes.Usage.Normal, 3, GL20.GL_FLOAT, false, "normalMat2"),
-            new VertexAttribute(VertexAttributes.Usage.Normal, 3, GL20.GL_FLOAT, false, "normalMat3")
+            new VertexAttribute(VertexAttributes.Usage.Generic, 3, GL20.GL_FLOAT, false, "instancePosition"),
+            new VertexAttribute(VertexAttributes.Usage.Generic, 1, GL20.GL_FLOAT, false, "instanceYaw"),
+            new VertexAttribute(VertexAttributes.Usage.Generic, 1, GL20.GL_FLOAT, false, "instanceScale")
     );
+    /** Floats per instance in {@link #drawInstanced(Shader, float[], int)} */
+    public static final int INSTANCE_SIZE = 5;
 
     public final boolean instanced;
-    private final int maxInstances;
     private final Mesh[] meshes;
     private final String[] meshIds;
     private final MeshPart[][] meshParts;
+    /** Vertices of each mesh and offsets of their position and normal, for {@link #bake(StaticBatch, Matrix4)} */
+    private final float[][] meshVertices;
+    private final int[] meshVertexSize, meshPositionOffset, meshNormalOffset;
 
     private final Array<Node> nodes = new Array<>();
     private final Array<NodePart> nodeParts = new Array<>();
@@ -40,7 +42,6 @@ public final class Model {
     //region DrawCache
     private final Matrix4 draw_transform = new Matrix4();
     private final Matrix3 draw_normal = new Matrix3();
-    private final float[] drawInstanced_data;
     //endregion
 
     private static String emptyIfNull(String s) {
@@ -108,14 +109,16 @@ public final class Model {
     }
 
     /**
-     * @param maxInstances if >1, meshes will be drawn instanced */
+     * @param maxInstances if >1, meshes will be drawn instanced, initial capacity of their instance buffers which grow when needed */
     public Model(ModelData modelData, int maxInstances, boolean staticInstances) {
         this.instanced = maxInstances > 1;
-        this.maxInstances = maxInstances > 1 ? maxInstances : 1;
-        this.drawInstanced_data = instanced ? new float[(INSTANCED_ATTRIBUTES.vertexSize / 4) * maxInstances] : null;
         this.meshes = new Mesh[modelData.meshes.size];
         this.meshIds = new String[modelData.meshes.size];
         this.meshParts = new MeshPart[modelData.meshes.size][];
+        this.meshVertices = new float[modelData.meshes.size][];
+        this.meshVertexSize = new int[modelData.meshes.size];
+        this.meshPositionOffset = new int[modelData.meshes.size];
+        this.meshNormalOffset = new int[modelData.meshes.size];
 
         // Prepare materials
         final Array<Material> materials = new Array<>(modelData.materials.size);
@@ -144,7 +147,7 @@ public final class Model {
             int indicesCount = 0;
             for (int meshPartI = 0; meshPartI < meshParts.length; meshPartI++) {
                 final ModelMeshPart modelMeshPart = modelMesh.parts[meshPartI];
-                meshParts[meshPartI] = new MeshPart(modelMeshPart.id, meshI, indicesCount, modelMeshPart.indices.length, modelMeshPart.primitiveType);
+                meshParts[meshPartI] = new MeshPart(modelMeshPart.id, meshI, indicesCount, modelMeshPart.indices, modelMeshPart.primitiveType);
                 indicesCount += modelMeshPart.indices.length;
             }
 
@@ -167,6 +170,12 @@ public final class Model {
             this.meshes[meshI] = mesh;
             this.meshIds[meshI] = modelMesh.id;
             this.meshParts[meshI] = meshParts;
+            this.meshVertices[meshI] = modelMesh.vertices;
+            this.meshVertexSize[meshI] = vertexAttributes.vertexSize / 4;
+            final VertexAttribute position = vertexAttributes.findByUsage(VertexAttributes.Usage.Position);
+            final VertexAttribute normal = vertexAttributes.findByUsage(VertexAttributes.Usage.Normal);
+            this.meshPositionOffset[meshI] = position == null ? -1 : position.offset / 4;
+            this.meshNormalOffset[meshI] = normal == null ? -1 : normal.offset / 4;
         }
 
         // Prepare nodes
@@ -216,81 +225,140 @@ public final class Model {
         }
     }
 
-    public void draw(Shader shader, Array<Matrix4> models) {
-        if (instanced) {
-            int offset = 0;
-            while (offset != models.size) {
-                int count = Math.min(models.size - offset, maxInstances);
-                drawInstanced(shader, models, offset, count);
-                offset += count;
-            }
-        } else {
-            for (Matrix4 model : models) {
-                draw(shader, model);
-            }
-        }
+    /** Write the instance to instances at offset, in {@link #drawInstanced(Shader, float[], int)} format. */
+    public static void putInstance(float[] instances, int offset, Vector3 position, float yDegrees, float scale) {
+        instances[offset] = position.x;
+        instances[offset + 1] = position.y;
+        instances[offset + 2] = position.z;
+        // Reduced first, so that the shader does not lose precision on large angles
+        instances[offset + 3] = (yDegrees % 360f) * MathUtils.degreesToRadians;
+        instances[offset + 4] = scale;
     }
 
-    public void drawInstanced(Shader shader, Array<Matrix4> models, int modelOffset, int modelCount) {
-        assert instanced;
+    /**
+     * Draw all instances with one call per node part.
+     * @param instances {@link #INSTANCE_SIZE} floats per instance: x, y, z, rotation around y in radians and scale,
+     *                  expanded by world-vert-inst.glsl
+     */
+    public void drawInstanced(Shader shader, float[] instances, int instanceCount) {
+        drawInstanced(shader, instances, null, instanceCount);
+    }
+
+    /** Draw all instances with one call per node part, with instance data already on the GPU. */
+    public void drawInstanced(Shader shader, InstanceBuffer instances, int instanceCount) {
+        drawInstanced(shader, null, instances, instanceCount);
+    }
 
-        final float[] instancedData = this.drawInstanced_data;
+    /** @param instanceData used when instanceBuffer is null */
+    private void drawInstanced(Shader shader, float[] instanceData, InstanceBuffer instanceBuffer, int instanceCount) {
+        assert instanced;
 
-        // We need to set fresh material for each node part, but
         Mesh lastBoundMesh = null;
         Node lastBoundNode = null;
 
         for (NodePart part : nodeParts) {
             final Mesh mesh = meshes[part.meshPart.meshIndex];
+            if (mesh != lastBoundMesh) {
+                if (lastBoundMesh != null) {
+                    lastBoundMesh.unbind();
+                }
+                lastBoundMesh = mesh;
+                if (instanceBuffer == null) {
+                    // Node parts are sorted by mesh, so the instances are set once for each
+                    mesh.setInstanceData(instanceData, 0, instanceCount * INSTANCE_SIZE);
+                    mesh.bind(shader);
+                } else {
+                    mesh.bind(shader, instanceBuffer);
+                }
+            }
 
             if (part.node != lastBoundNode) {
-                if (lastBoundMesh != null) lastBoundMesh.unbind();
-                lastBoundMesh = mesh;
                 lastBoundNode = part.node;
 
-                // All nodes have equal transform, and we set it here, for all instances
-                int instancedDataI = 0;
-                for (int i = 0; i < modelCount; i++) {
-                    final Matrix4 modelMatRaw = models.get(modelOffset + i);
-                    final Matrix4 modelMat = draw_transform.set(modelMatRaw).mul(part.node.transform);
-                    final Matrix3 normalMat = draw_normal.set(modelMat).inv().transpose();
-
-                    System.arraycopy(modelMat.val, 0, instancedData, instancedDataI, 16);
-                    instancedDataI += 16;
-                    System.arraycopy(normalMat.val, 0, instancedData, instancedDataI, 9);
-                    instancedDataI += 9;
-                }
+                shader.uniform("nodeMat").set(part.node.transform);
+                shader.uniform("nodeNormalMat").set(part.node.normalTransform);
+            }
 
-                mesh.setInstanceData(instancedData, 0, instancedDataI);
+            final Shader.Uniform materialBlock = shader.uniformBlock("Material");
+            final Material material = part.material;
+            material.bind(materialBlock, 1);
+
+            final MeshPart meshPart = part.meshPart;
+            mesh.renderInstanced(meshPart.primitive, meshPart.indicesOffset, meshPart.indicesCount, instanceCount);
+        }
+
+        if (lastBoundMesh != null) {
+            lastBoundMesh.unbind();
+        }
+    }
+
+    /**
+     * Draw instances which the shader places by itself, from gl_InstanceID.
+     * Transform of each node is set to uniforms nodeMat and nodeNormalMat, instead of being part of instance data.
+     */
+    public void drawProcedural(Shader shader, int instances) {
+        Mesh lastBoundMesh = null;
+        Node lastBoundNode = null;
+
+        for (NodePart part : nodeParts) {
+            final Mesh mesh = meshes[part.meshPart.meshIndex];
+            if (mesh != lastBoundMesh) {
+                if (lastBoundMesh != null) {
+                    lastBoundMesh.unbind();
+                }
+                lastBoundMesh = mesh;
                 mesh.bind(shader);
             }
 
-            // All node parts have different material
+            if (part.node != lastBoundNode) {
+                lastBoundNode = part.node;
+
+                shader.uniform("nodeMat").set(part.node.transform);
+                shader.uniform("nodeNormalMat").set(part.node.normalTransform);
+            }
+
             final Shader.Uniform materialBlock = shader.uniformBlock("Material");
             final Material material = part.material;
             material.bind(materialBlock, 1);
 
             final MeshPart meshPart = part.meshPart;
-            mesh.renderInstanced(meshPart.primitive, meshPart.indicesOffset, meshPart.indicesCount, modelCount);
+            mesh.renderInstanced(meshPart.primitive, meshPart.indicesOffset, meshPart.indicesCount, instances);
         }
 
         if (lastBoundMesh != null) {
             lastBoundMesh.unbind();
         }
+    }
+
+    /** Add geometry of this model with the transform to the batch. Only triangles with positions and normals can be baked. */
+    public void bake(StaticBatch batch, Matrix4 transform) {
+        for (NodePart part : nodeParts) {
+            final MeshPart meshPart = part.meshPart;
+            final int meshIndex = meshPart.meshIndex;
+            if (meshPart.primitive != GL20.GL_TRIANGLES || meshPositionOffset[meshIndex] == -1 || meshNormalOffset[meshIndex] == -1) {
+                throw new IllegalArgumentException("Model can't be baked");
+            }
 
+            final Matrix4 modelMat = draw_transform.set(transform).mul(part.node.transform);
+            final Matrix3 normalMat = draw_normal.set(modelMat).inv().transpose();
+            batch.add(part.material, meshVertices[meshIndex], meshVertexSize[meshIndex],
+                    meshPositionOffset[meshIndex], meshNormalOffset[meshIndex], meshPart.indices, modelMat, normalMat);
+        }
     }
 
     private static class MeshPart implements Comparable<MeshPart> {
         private final String meshPartId;
         private final int meshIndex;
         private final int indicesOffset, indicesCount;
+        private final short[] indices;
         private final int primitive;
 
-        private MeshPart(String meshPartId, int meshIndex, int indicesOffset, int indicesCount, int primitive) {
+        private MeshPart(String meshPartId, int meshIndex, int indicesOffset, short[] indices, int primitive) {
             this.meshPartId = meshPartId;
             this.meshIndex = meshIndex;
             this.indicesOffset = indicesOffset;
-            this.indicesCount = indicesCount;
+            this.indicesCount = indices.length;
+            this.indices = indices;
             this.primitive = primitive;
         }
 
@@ -307,11 +375,14 @@ public final class Model {
         private final String nodeId;
         private final Node parent;
         private final Matrix4 transform;
+        /** Transpose of inversed transform */
+        private final Matrix3 normalTransform;
 
         private Node(String nodeId, Node parent, Matrix4 transform) {
             this.nodeId = nodeId;
             this.parent = parent;
             this.transform = transform;
+            this.normalTransform = new Matrix3().set(transform).inv().transpose();
         }
 
         private int parents() {
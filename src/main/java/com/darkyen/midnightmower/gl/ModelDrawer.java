@@ -0,0 +1,15 @@
+package com.darkyen.midnightmower.gl;
+
+import com.badlogic.gdx.math.Vector3;
+
+/**
+ * Something which {@link Model}s can be drawn into, placed on the ground and rotated around Y.
+ */
+public interface ModelDrawer {
+
+    void draw(Model model, Vector3 position);
+
+    void draw(Model model, Vector3 position, float yDegrees);
+
+    void draw(Model model, Vector3 position, float yDegrees, float scale);
+}
@@ -0,0 +1,62 @@
+package com.darkyen.midnightmower.gl;
+
+import com.badlogic.gdx.math.Vector3;
+
+/**
+ * Handle of an instance in the retained scene of {@link Environment}, created by {@link Environment#add(Model, Vector3, float, float)}.
+ * The instance is drawn in every frame until it is removed, without being drawn again.
+ * Changes are uploaded once, at the end of the next frame.
+ */
+public final class SceneInstance {
+
+    final Environment.SceneModel sceneModel;
+    /** In {@link Model#drawInstanced(Shader, float[], int)} format */
+    final float[] data = new float[Model.INSTANCE_SIZE];
+    /** Index in the visible instances of the scene model, -1 when hidden or removed */
+    int index = -1;
+    private boolean visible = true;
+    private boolean removed = false;
+
+    SceneInstance(Environment.SceneModel sceneModel, Vector3 position, float yDegrees, float scale) {
+        this.sceneModel = sceneModel;
+        Model.putInstance(data, 0, position, yDegrees, scale);
+        sceneModel.show(this);
+    }
+
+    public void set(Vector3 position, float yDegrees, float scale) {
+        assert !removed;
+        Model.putInstance(data, 0, position, yDegrees, scale);
+        if (index != -1) {
+            sceneModel.update(this);
+        }
+    }
+
+    public boolean isVisible() {
+        return visible;
+    }
+
+    /** Hidden instance keeps its transform, but costs nothing when drawing. */
+    public void setVisible(boolean visible) {
+        assert !removed;
+        if (this.visible == visible) {
+            return;
+        }
+        this.visible = visible;
+        if (visible) {
+            sceneModel.show(this);
+        } else {
+            sceneModel.hide(this);
+        }
+    }
+
+    /** Remove from the scene, the handle must not be used afterwards. */
+    public void remove() {
+        if (removed) {
+            return;
+        }
+        if (visible) {
+            sceneModel.hide(this);
+        }
+        removed = true;
+    }
+}
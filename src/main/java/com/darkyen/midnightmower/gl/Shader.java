@@ -224,6 +224,15 @@ public final class Shader {
             return true;
         }
 
+        /** Call while bound */
+        public boolean set(int x, int y) {
+            assert !block;
+            final int location = getLocation();
+            if (location < 0) return false;
+            Gdx.gl30.glUniform2i(location, x, y);
+            return true;
+        }
+
         /** Call while bound */
         public boolean set(float value) {
             assert !block;
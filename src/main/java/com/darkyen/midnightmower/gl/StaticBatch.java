@@ -0,0 +1,182 @@
+package com.darkyen.midnightmower.gl;
+
+import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.VertexAttribute;
+import com.badlogic.gdx.graphics.VertexAttributes;
+import com.badlogic.gdx.math.Matrix3;
+import com.badlogic.gdx.math.Matrix4;
+import com.badlogic.gdx.math.Vector3;
+import com.badlogic.gdx.math.collision.BoundingBox;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Disposable;
+import com.badlogic.gdx.utils.FloatArray;
+import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.ShortArray;
+
+/**
+ * Geometry of many models which never move, transformed into world space once and merged into a few meshes,
+ * one per material (or more, if one material has more than {@link #MAX_VERTICES}).
+ * Drawing it then costs one draw call per mesh, regardless of how many models it contains.
+ *
+ * Models are added through {@link ModelDrawer} methods, then {@link #build()} uploads the meshes.
+ */
+public final class StaticBatch implements ModelDrawer, Disposable {
+
+    private static final VertexAttributes ATTRIBUTES = new VertexAttributes(
+            VertexAttribute.Position(),
+            VertexAttribute.Normal()
+    );
+    private static final int VERTEX_SIZE = 6;
+    /** Indices are unsigned shorts */
+    private static final int MAX_VERTICES = 1 << 16;
+
+    private static final Matrix4 IDENTITY_4 = new Matrix4();
+    private static final Matrix3 IDENTITY_3 = new Matrix3();
+
+    /** Bounds of all added geometry */
+    public final BoundingBox bounds = new BoundingBox().inf();
+
+    /** Geometry being added, by material, null after build */
+    private ObjectMap<Material, Part> building = new ObjectMap<>();
+    private final Array<Part> parts = new Array<>(false, 4, Part.class);
+
+    //region DrawCache
+    private final Matrix4 draw_transform = new Matrix4();
+    private final Vector3 add_vector = new Vector3();
+    //endregion
+
+    @Override
+    public void draw(Model model, Vector3 position) {
+        model.bake(this, draw_transform.setToTranslation(position));
+    }
+
+    @Override
+    public void draw(Model model, Vector3 position, float yDegrees) {
+        final Matrix4 transform = draw_transform.idt();
+        transform.translate(position);
+        transform.rotate(Vector3.Y, yDegrees);
+        model.bake(this, transform);
+    }
+
+    @Override
+    public void draw(Model model, Vector3 position, float yDegrees, float scale) {
+        final Matrix4 transform = draw_transform.idt();
+        transform.translate(position);
+        transform.rotate(Vector3.Y, yDegrees);
+        transform.scale(scale, scale, scale);
+        model.bake(this, transform);
+    }
+
+    /**
+     * Add triangles of a model part.
+     * @param vertices of the whole model mesh, vertexSize floats per vertex
+     * @param indices of the part triangles
+     */
+    void add(Material material, float[] vertices, int vertexSize, int positionOffset, int normalOffset,
+             short[] indices, Matrix4 modelMat, Matrix3 normalMat) {
+        assert building != null : "Already built";
+        if (indices.length == 0) {
+            return;
+        }
+
+        int firstVertex = Integer.MAX_VALUE, lastVertex = 0;
+        for (short index : indices) {
+            final int vertex = index & 0xFFFF;
+            firstVertex = Math.min(firstVertex, vertex);
+            lastVertex = Math.max(lastVertex, vertex);
+        }
+        final int vertexCount = lastVertex - firstVertex + 1;
+        if (vertexCount > MAX_VERTICES) {
+            throw new IllegalArgumentException("Model part is too big");
+        }
+
+        Part part = building.get(material);
+        if (part == null || part.vertices.size / VERTEX_SIZE + vertexCount > MAX_VERTICES) {
+            part = new Part(material);
+            parts.add(part);
+            building.put(material, part);
+        }
+
+        final FloatArray out = part.vertices;
+        final int baseVertex = out.size / VERTEX_SIZE;
+        final float[] items = out.ensureCapacity(vertexCount * VERTEX_SIZE);
+        int outI = out.size;
+        final Vector3 vector = add_vector;
+        for (int vertex = firstVertex; vertex <= lastVertex; vertex++) {
+            final int offset = vertex * vertexSize;
+            vector.set(vertices[offset + positionOffset], vertices[offset + positionOffset + 1], vertices[offset + positionOffset + 2]).mul(modelMat);
+            items[outI++] = vector.x;
+            items[outI++] = vector.y;
+            items[outI++] = vector.z;
+            bounds.ext(vector);
+            vector.set(vertices[offset + normalOffset], vertices[offset + normalOffset + 1], vertices[offset + normalOffset + 2]).mul(normalMat).nor();
+            items[outI++] = vector.x;
+            items[outI++] = vector.y;
+            items[outI++] = vector.z;
+        }
+        out.size = outI;
+
+        final ShortArray outIndices = part.indices;
+        for (short index : indices) {
+            outIndices.add((short) ((index & 0xFFFF) - firstVertex + baseVertex));
+        }
+    }
+
+    /** Upload the geometry. Nothing can be added afterwards. */
+    public void build() {
+        for (Part part : parts) {
+            final Mesh mesh = new Mesh(ATTRIBUTES, true, part.vertices.size / VERTEX_SIZE, true, part.indices.size);
+            mesh.setVertices(part.vertices.items, 0, part.vertices.size);
+            mesh.setIndices(part.indices.items, 0, part.indices.size);
+            part.mesh = mesh;
+            part.indexCount = part.indices.size;
+            part.vertices = null;
+            part.indices = null;
+        }
+        building = null;
+    }
+
+    /** @return true if there is nothing to draw */
+    public boolean isEmpty() {
+        return parts.size == 0;
+    }
+
+    /** Draw with shader for non instanced models, which must be bound. */
+    public void draw(Shader shader) {
+        assert building == null : "Not built";
+        if (parts.size == 0) {
+            return;
+        }
+        shader.uniform("modelMat").set(IDENTITY_4);
+        shader.uniform("normalMat").set(IDENTITY_3);
+        final Shader.Uniform materialBlock = shader.uniformBlock("Material");
+        for (Part part : parts) {
+            part.material.bind(materialBlock, 1);
+            part.mesh.bind(shader);
+            part.mesh.render(GL20.GL_TRIANGLES, 0, part.indexCount);
+            part.mesh.unbind();
+        }
+    }
+
+    @Override
+    public void dispose() {
+        for (Part part : parts) {
+            if (part.mesh != null) {
+                part.mesh.dispose();
+            }
+        }
+        parts.clear();
+    }
+
+    private static final class Part {
+        private final Material material;
+        private FloatArray vertices = new FloatArray();
+        private ShortArray indices = new ShortArray();
+        private Mesh mesh;
+        private int indexCount;
+
+        private Part(Material material) {
+            this.material = material;
+        }
+    }
+}
@@ -3,11 +3,14 @@ package com.darkyen.midnightmower.gl;
 import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.files.FileHandle;
 import com.badlogic.gdx.graphics.GL20;
+import com.badlogic.gdx.graphics.GL30;
 import com.badlogic.gdx.graphics.Pixmap;
 import com.badlogic.gdx.graphics.Texture.TextureFilter;
 import com.badlogic.gdx.graphics.Texture.TextureWrap;
 import com.badlogic.gdx.utils.Disposable;
 
+import java.nio.ByteBuffer;
+
 /**
  * Represents OpenGL texture
  */
@@ -57,6 +60,29 @@ public final class Texture implements Disposable{
         pixmap.dispose();
     }
 
+    /** Binds the texture! Texels are unsigned bytes, to be read with usampler2D. */
+    public void loadBytes(int width, int height, ByteBuffer texels) {
+        final GL20 gl = Gdx.gl30;
+        this.format = null;
+        this.width = width;
+        this.height = height;
+
+        gl.glPixelStorei(GL20.GL_UNPACK_ALIGNMENT, 1);
+        gl.glBindTexture(textureTarget, textureHandle);
+        gl.glTexImage2D(textureTarget, 0, GL30.GL_R8UI, width, height, 0, GL30.GL_RED_INTEGER, GL20.GL_UNSIGNED_BYTE, texels);
+
+        // Integer textures can't be filtered
+        setFilter(TextureFilter.Nearest, TextureFilter.Nearest);
+        setWrap(TextureWrap.ClampToEdge, TextureWrap.ClampToEdge);
+    }
+
+    /** Texture must be bound! Replace part of the texels of {@link #loadBytes(int, int, ByteBuffer)} texture. */
+    public void updateBytes(int x, int y, int width, int height, ByteBuffer texels) {
+        final GL20 gl = Gdx.gl30;
+        gl.glPixelStorei(GL20.GL_UNPACK_ALIGNMENT, 1);
+        gl.glTexSubImage2D(textureTarget, 0, x, y, width, height, GL30.GL_RED_INTEGER, GL20.GL_UNSIGNED_BYTE, texels);
+    }
+
     public void bind(int unit) {
         final GL20 gl = Gdx.gl30;
         gl.glActiveTexture(GL20.GL_TEXTURE0 + unit);
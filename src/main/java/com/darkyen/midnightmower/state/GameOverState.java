@@ -28,8 +28,12 @@ public final class GameOverState extends State {
         this.previousTotalLevelTime = previousTotalLevelTime;
     }
 
+    /** How long can keyDown block when the next level is not prefetched yet */
+    private static final long MAX_LEVEL_WAIT_MS = 50;
+
     private float time = 0f;
     private boolean goingToNextLevel = false;
+    private boolean waitingForLevel = false;
 
     @Override
     public void begin() {
@@ -39,6 +43,16 @@ public final class GameOverState extends State {
     @Override
     public void update(float delta) {
         time += delta;
+        if (game.autopilot) {
+            continueToNextLevel();
+        }
+        if (waitingForLevel) {
+            final Level level = game.levelPrefetcher.poll();
+            if (level != null) {
+                waitingForLevel = false;
+                goToNextLevel(level);
+            }
+        }
         game.cameraman.apply(game.getWorldViewport().getCamera());
     }
 
@@ -64,13 +78,30 @@ public final class GameOverState extends State {
 
     @Override
     public boolean keyDown(int keycode) {
-        if (time > 2f && !goingToNextLevel) {
-            goingToNextLevel = true;
-            game.level = new Level(lastCompleteLevel + 1, System.currentTimeMillis());
-            game.cameraman.next(game.CAMERA_SHOT_PLAYER_VIEW, 2f, Interpolation.smooth);
-            game.schedule(2f, () -> game.setState(new GameState(game, previousTotalLevelTime + levelTime)));
+        return continueToNextLevel();
+    }
+
+    private boolean continueToNextLevel() {
+        if (time > 2f && !goingToNextLevel && !waitingForLevel) {
+            Level level = game.levelPrefetcher.take(MAX_LEVEL_WAIT_MS);
+            if (level == null) {
+                if (game.levelPrefetcher.isPending()) {
+                    // Still generating, update() will pick it up
+                    waitingForLevel = true;
+                    return true;
+                }
+                level = game.levelCache.get(lastCompleteLevel + 1, System.currentTimeMillis());
+            }
+            goToNextLevel(level);
             return true;
         }
         return false;
     }
+
+    private void goToNextLevel(Level level) {
+        goingToNextLevel = true;
+        game.level = level;
+        game.cameraman.next(game.CAMERA_SHOT_PLAYER_VIEW, 2f, Interpolation.smooth);
+        game.schedule(2f, () -> game.setState(new GameState(game, previousTotalLevelTime + levelTime)));
+    }
 }
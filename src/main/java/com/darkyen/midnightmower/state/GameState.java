@@ -16,15 +16,35 @@ import com.badlogic.gdx.utils.viewport.ScreenViewport;
 import com.darkyen.midnightmower.Game;
 import com.darkyen.midnightmower.State;
 import com.darkyen.midnightmower.font.GlyphLayout;
+import com.darkyen.midnightmower.font.TextBuilder;
+import com.darkyen.midnightmower.game.Autosave;
+import com.darkyen.midnightmower.game.FixedTimestep;
+import com.darkyen.midnightmower.game.InputRecording;
 import com.darkyen.midnightmower.game.Level;
+import com.darkyen.midnightmower.game.MowerBot;
+import com.darkyen.midnightmower.game.Simulation;
+import com.darkyen.midnightmower.game.TileJournal;
+import com.darkyen.midnightmower.game.WorldRenderer;
 import com.darkyen.midnightmower.gl.ParticleEffect;
 import com.darkyen.midnightmower.gl.SpriteBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
 
 /**
  *
  */
 public final class GameState extends State {
 
+    private static final Logger LOG = LoggerFactory.getLogger(GameState.class);
+
+    /** Input of the last played level is saved here */
+    public static final File LAST_RECORDING = new File("recordings/last.mmir");
+    /** Seconds between snapshots of the level */
+    private static final float AUTOSAVE_INTERVAL = 3f;
+
     private boolean debugCamera = false;
     private boolean debugDraw = false;
     private final FirstPersonCameraController debugCameraController;
@@ -39,9 +59,9 @@ public final class GameState extends State {
         @Override
         public void spawn(GrassParticle particle) {
             final Level level = game.level;
-            particle.position.set(level.playerPos.x, 0.1f, level.playerPos.y);
+            particle.position.set(level.renderPlayerPos.x, 0.1f, level.renderPlayerPos.y);
             particle.scale.y = particle.scale.z = particle.scale.x = MathUtils.random() * 0.1f;
-            particle.flyDirection.set(MathUtils.random(-0.35f, 0.35f), MathUtils.random(-0.25f, 0.25f), -1f).nor().rotate(Vector3.Y, level.playerAngle);
+            particle.flyDirection.set(MathUtils.random(-0.35f, 0.35f), MathUtils.random(-0.25f, 0.25f), -1f).nor().rotate(Vector3.Y, level.renderPlayerAngle);
             particle.rotationAxis.setToRandomDirection();
             particle.rotation.set(particle.rotationAxis, particle.rotationDeg = MathUtils.random() * 360f);
             particle.remainingTime = 1f;
@@ -64,6 +84,15 @@ public final class GameState extends State {
         public float rotationDeg;
     }
 
+    /** Reads grass cuts of the level */
+    private final TileJournal.Cursor cutCursor;
+    private final TileJournal.TileConsumer cutConsumer = (x, y) -> {
+        // Only cuts around the player, not those of distant swarm mowers
+        if (Math.abs(x - game.level.playerTileX) <= 1 && Math.abs(y - game.level.playerTileY) <= 1) {
+            playGrassCutEffect();
+        }
+    };
+
     private float timeToNextParticle = 0f;
     private int particlesRemaining = 0;
 
@@ -79,15 +108,52 @@ public final class GameState extends State {
             Gdx.audio.newSound(Gdx.files.internal("sounds/grass-cut-04.ogg")),
     };
 
-    private boolean engineRunning = false;
-    private float levelTime = 0f;
+    private final Simulation simulation;
     private final float previousTotalLevelTime;
-    private float timeSinceEngineStall = -1f;
+
+    /** Input of this session, recorded from the first tick with running engine */
+    private final InputRecording recording;
+    /** When not null, input is taken from it instead of the keyboard */
+    private final Simulation.InputSource inputSource;
+    /** Same as inputSource, if it is a replay */
+    private final InputRecording.Replay replay;
+    private boolean inputStarted = false;
+    /** Level is continued from the autosave, so the recording does not start at its beginning */
+    private final boolean resumed;
+    private float timeToAutosave = AUTOSAVE_INTERVAL;
+
+    private int replayFrames = 0;
+    private float replayFrameTime = 0f, replayMaxFrameTime = 0f;
 
     public GameState(Game game, float previousTotalLevelTime) {
+        this(game, previousTotalLevelTime, null);
+    }
+
+    /** @param inputSource to use instead of the keyboard, for example replay recorded on game.level.
+     *                    When null, {@link MowerBot} is used when {@link Game#autopilot} is on, otherwise the keyboard. */
+    public GameState(Game game, float previousTotalLevelTime, Simulation.InputSource inputSource) {
+        this(game, previousTotalLevelTime, 0f, false, inputSource);
+    }
+
+    /** Continue the run of game.level, which has been restored from the autosave. */
+    public GameState(Game game, Autosave.Saved saved) {
+        this(game, saved.previousTotalLevelTime, saved.levelTime, true, null);
+    }
+
+    private GameState(Game game, float previousTotalLevelTime, float levelTime, boolean resumed, Simulation.InputSource inputSource) {
         super(game);
         debugCameraController = new FirstPersonCameraController(game.getWorldViewport().getCamera());
         this.previousTotalLevelTime = previousTotalLevelTime;
+        this.resumed = resumed;
+        this.simulation = new Simulation(game.level, levelTime);
+        this.cutCursor = game.level.changes.newCursor();
+        this.recording = InputRecording.of(game.level);
+        if (inputSource == null && game.autopilot && !game.level.isEndless()) {
+            inputSource = new MowerBot(game.level);
+        }
+        this.inputSource = inputSource;
+        this.replay = inputSource instanceof InputRecording.Replay ? (InputRecording.Replay) inputSource : null;
+        game.level.snapRenderPlayer();
     }
 
     @Override
@@ -96,7 +162,7 @@ public final class GameState extends State {
         soundStart.play();
 
         game.schedule(3.1f, ()->{
-            engineRunning = true;
+            simulation.startEngine();
             game.enableHeadlights();
             game.stopCrickets();
             soundIdleLoopId = soundIdle.loop();
@@ -116,6 +182,18 @@ public final class GameState extends State {
         grassCut[MathUtils.random.nextInt(grassCut.length)].play(1f, 1f + MathUtils.random(-0.05f, 0.1f), 0f);
     }
 
+    /** Simulation ticks independently of the frame rate */
+    private final FixedTimestep timestep = new FixedTimestep(Simulation.TICK, 12);
+
+    private int readInput() {
+        int input = 0;
+        if (Gdx.input.isKeyPressed(Input.Keys.W) || Gdx.input.isKeyPressed(Input.Keys.UP)) input |= Simulation.INPUT_FORWARD;
+        if (Gdx.input.isKeyPressed(Input.Keys.S) || Gdx.input.isKeyPressed(Input.Keys.DOWN)) input |= Simulation.INPUT_BACKWARD;
+        if (Gdx.input.isKeyPressed(Input.Keys.A) || Gdx.input.isKeyPressed(Input.Keys.LEFT)) input |= Simulation.INPUT_LEFT;
+        if (Gdx.input.isKeyPressed(Input.Keys.D) || Gdx.input.isKeyPressed(Input.Keys.RIGHT)) input |= Simulation.INPUT_RIGHT;
+        return input;
+    }
+
     @Override
     public void update(float delta) {
         final Level level = game.level;
@@ -124,24 +202,31 @@ public final class GameState extends State {
 
             cutGrassParticles.update(delta);
 
-            if (timeSinceEngineStall != -1f) {
-                timeSinceEngineStall += delta;
-            }
+            final int ticks = timestep.advance(delta);
+            if (ticks > 0) {
+                final int keyboardInput = inputSource == null ? readInput() : 0;
+                for (int i = 0; i < ticks; i++) {
+                    // Input does nothing before the engine starts, so the recording starts with it
+                    inputStarted |= simulation.isEngineRunning();
+                    int input = 0;
+                    if (inputStarted) {
+                        input = inputSource == null ? keyboardInput : inputSource.input(simulation);
+                        recording.record(input);
+                    }
 
-            final float playerSpeed;
-            if (engineRunning) {
-                playerSpeed = level.playerSpeed;
-            } else if (timeSinceEngineStall >= 0f) {
-                playerSpeed = level.playerSpeed * MathUtils.clamp( 1f - Interpolation.circleIn.apply(timeSinceEngineStall * 2f), 0f, 1f);
-            } else {
-                playerSpeed = 0f;
+                    level.beginTick();
+                    if (simulation.tick(input)) {
+                        levelCompleted(level);
+                    }
+                }
             }
+            updateReplayStats(delta);
+            autosave(delta);
+            level.interpolateRenderPlayer(timestep.alpha());
 
-            if (engineRunning) {
-                levelTime  += delta;
-            }
+            level.changes.drain(cutCursor, cutConsumer);
 
-            if (particlesRemaining > 0 && timeSinceEngineStall < 1f) {
+            if (particlesRemaining > 0 && simulation.getTimeSinceEngineStall() < 1f) {
                 timeToNextParticle -= delta;
                 while (timeToNextParticle < 0f) {
                     timeToNextParticle += 0.015f;
@@ -150,64 +235,12 @@ public final class GameState extends State {
                 }
             }
 
-            if (playerSpeed > 0f) {
-
-                final boolean forward = Gdx.input.isKeyPressed(Input.Keys.W) || Gdx.input.isKeyPressed(Input.Keys.UP);
-                final boolean backward = Gdx.input.isKeyPressed(Input.Keys.S) || Gdx.input.isKeyPressed(Input.Keys.DOWN);
-                if (forward ^ backward) {
-                    // Could better handle discrete updates with rotation
-                    final Vector2 movement = new Vector2(0f, playerSpeed * delta * (forward ? 1f : -0.7f)).rotate(-level.playerAngle);
-                    final Level.CollisionData collisionData = level.playerMove(movement);
-                    if (collisionData.grassCut) {
-                        playGrassCutEffect();
-                    }
-                    if (collisionData.collision != Level.CollisionData.NO_COLLISION) {
-                        // Slide
-                        movement.mulAdd(movement, -collisionData.distanceTravelled / movement.len());
-                        if (collisionData.collision == Level.CollisionData.COLLIDED_CROSSING_X) {
-                            movement.x = 0f;
-                        } else {
-                            movement.y = 0f;
-                        }
-                        if (level.playerMove(movement).grassCut) {
-                            playGrassCutEffect();
-                        }
-                    }
-                }
-
-                final boolean left = Gdx.input.isKeyPressed(Input.Keys.A) || Gdx.input.isKeyPressed(Input.Keys.LEFT);
-                final boolean right = Gdx.input.isKeyPressed(Input.Keys.D) || Gdx.input.isKeyPressed(Input.Keys.RIGHT);
-
-                if (left ^ right) {
-                    final float turnAngle = delta * level.playerRotationSpeed;
-                    level.playerAngle += left ? turnAngle : -turnAngle;
-                }
-
-
+            if (simulation.playerSpeed() > 0f) {
                 nextStrayParticle -= delta;
                 while (nextStrayParticle < 0) {
                     cutGrassParticles.spawn(1);
                     nextStrayParticle += MathUtils.random() * 0.9f;
                 }
-
-            }
-
-            if (engineRunning && level.remainingGrass == 0) {
-                engineRunning = false;
-                timeSinceEngineStall = 0f;
-
-                game.schedule(1f, () -> {
-                    soundEnd.play();
-                    game.startCrickets();
-                    soundIdle.stop(soundIdleLoopId);
-                    soundIdleLoopId = -1;
-
-                    game.schedule(0.2f, () -> {
-                        game.disableHeadlights();
-
-                        game.schedule(2f, () -> game.setState(new GameOverState(game, level.order, levelTime, levelTime + previousTotalLevelTime)));
-                    });
-                });
             }
         }
 
@@ -220,6 +253,72 @@ public final class GameState extends State {
         game.cameraman.apply(game.getWorldViewport().getCamera());
     }
 
+    private void updateReplayStats(float delta) {
+        if (replay == null || !inputStarted || replayFrames < 0) {
+            return;
+        }
+        if (replayFrames == 0) {
+            GLProfiler.reset();
+        }
+        replayFrames++;
+        replayFrameTime += delta;
+        replayMaxFrameTime = Math.max(replayMaxFrameTime, delta);
+
+        if (replay.isFinished()) {
+            LOG.info("Replay finished: {} frames, average frame {} ms, max frame {} ms, {} draw calls per frame",
+                    replayFrames, replayFrameTime * 1000f / replayFrames, replayMaxFrameTime * 1000f,
+                    (float) GLProfiler.drawCalls / replayFrames);
+            replayFrames = -1;
+        }
+    }
+
+    private void autosave(float delta) {
+        // Replays do not overwrite the run of the player
+        if (replay != null || !simulation.isEngineRunning()) {
+            return;
+        }
+        timeToAutosave -= delta;
+        if (timeToAutosave <= 0f) {
+            timeToAutosave = AUTOSAVE_INTERVAL;
+            game.autosave.save(game.level, simulation.getLevelTime(), previousTotalLevelTime);
+        }
+    }
+
+    @Override
+    public void end() {
+        if (resumed) {
+            return;
+        }
+        try {
+            recording.save(LAST_RECORDING);
+        } catch (IOException e) {
+            LOG.warn("Failed to save input recording", e);
+        }
+    }
+
+    private void levelCompleted(Level level) {
+        if (replay == null) {
+            game.autosave.delete();
+        }
+        game.levelPrefetcher.prefetch(level.order + 1, System.currentTimeMillis());
+
+        game.schedule(1f, () -> {
+            soundEnd.play();
+            game.startCrickets();
+            soundIdle.stop(soundIdleLoopId);
+            soundIdleLoopId = -1;
+
+            game.schedule(0.2f, () -> {
+                game.disableHeadlights();
+
+                game.schedule(2f, () -> game.setState(new GameOverState(game, level.order, simulation.getLevelTime(), simulation.getLevelTime() + previousTotalLevelTime)));
+            });
+        });
+    }
+
+    private final TextBuilder uiText = new TextBuilder();
+    private final Vector2 renderUI_nearestGrass = new Vector2();
+
     @Override
     public void renderUI() {
         final ScreenViewport uiViewport = game.getUiViewport();
@@ -236,28 +335,36 @@ public final class GameState extends State {
 
         uiBatch.begin(uiViewport.getCamera(), true);
         if (debugDraw) {
-            glyphLayout.setText("FPS: "+Gdx.graphics.getFramesPerSecond()
-                    +"\nPos: "+level.playerPos
-                    +"\nTile: "+level.playerTileX+" "+level.playerTileY
-                    +"\nA: "+level.playerAngle
-                    +"\nGrass: "+level.remainingGrass
-                    +"\nPart: "+cutGrassParticles.getParticleCount()
-                    +"\nGL Calls: "+ GLProfiler.calls
-                    +"\nGL DrawCalls: "+GLProfiler.drawCalls
-                    +"\nGL TextureBinds: "+GLProfiler.textureBindings
-                    +"\nGL ShaderSwitches: "+GLProfiler.shaderSwitches
-                    +"\nGL Elements: "+GLProfiler.vertexCount.total, Color.WHITE, Gdx.graphics.getWidth(), Align.left);
+            final TextBuilder text = uiText.clear();
+            text.append("FPS: ").append(Gdx.graphics.getFramesPerSecond())
+                    .append("\nPos: (").append(level.playerPos.x, 3).append(',').append(level.playerPos.y, 3).append(')')
+                    .append("\nTile: ").append(level.playerTileX).append(' ').append(level.playerTileY)
+                    .append("\nA: ").append(level.playerAngle, 2)
+                    .append("\nGrass: ").append(level.remainingGrass);
+            if (level.findNearestGrass(level.playerPos.x, level.playerPos.y, renderUI_nearestGrass)) {
+                text.append("\nNearest grass: ").append(renderUI_nearestGrass.dst(level.playerPos), 2);
+            }
+            text.append("\nChunks: ").append(WorldRenderer.chunksVisible).append('/').append(WorldRenderer.chunksTotal)
+                    .append("\nPart: ").append(cutGrassParticles.getParticleCount())
+                    .append("\nGL Calls: ").append(GLProfiler.calls)
+                    .append("\nGL DrawCalls: ").append(GLProfiler.drawCalls)
+                    .append("\nGL TextureBinds: ").append(GLProfiler.textureBindings)
+                    .append("\nGL ShaderSwitches: ").append(GLProfiler.shaderSwitches)
+                    .append("\nGL Elements: ").append((long) GLProfiler.vertexCount.total);
+            glyphLayout.setText(text, Color.WHITE, Gdx.graphics.getWidth(), Align.left);
             GLProfiler.reset();
             glyphLayout.draw(uiBatch, 0, Gdx.graphics.getHeight());
         } else {
-            if (level.remainingGrass != 0) {
-                glyphLayout.setText("Remaining: " + level.remainingGrass, Color.WHITE, 0f, Align.left);
+            if (level.isEndless()) {
+                glyphLayout.setText(uiText.clear().append("Mowed: ").append(level.endless.getMowedGrass()), Color.WHITE, 0f, Align.left);
+                glyphLayout.draw(uiBatch, 10f, Gdx.graphics.getHeight() - 10f);
+            } else if (level.remainingGrass != 0) {
+                glyphLayout.setText(uiText.clear().append("Remaining: ").append(level.remainingGrass), Color.WHITE, 0f, Align.left);
                 glyphLayout.draw(uiBatch, 10f, Gdx.graphics.getHeight() - 10f);
             }
 
-            final int seconds = (int)(levelTime + previousTotalLevelTime);
-            final int milliseconds = (int)((levelTime + previousTotalLevelTime)*1000f) % 1000;
-            glyphLayout.setText(String.format("{#AEA}%d.%03d{}", seconds, milliseconds), Color.GREEN, 0f, Align.left);
+            uiText.clear().append("{#AEA}").appendSecondsMillis(simulation.getLevelTime() + previousTotalLevelTime).append("{}");
+            glyphLayout.setText(uiText, Color.GREEN, 0f, Align.left);
             glyphLayout.draw(uiBatch, Gdx.graphics.getWidth()/2f - glyphLayout.width/2f, Gdx.graphics.getHeight() - 10f);
         }
         uiBatch.end();
@@ -9,18 +9,29 @@ import com.badlogic.gdx.utils.Align;
 import com.darkyen.midnightmower.Game;
 import com.darkyen.midnightmower.State;
 import com.darkyen.midnightmower.font.GlyphLayout;
+import com.darkyen.midnightmower.game.InputRecording;
 import com.darkyen.midnightmower.game.Level;
+import com.darkyen.midnightmower.game.MowerSwarm;
 import com.darkyen.midnightmower.gl.SpriteBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
 
 /**
  *
  */
 public final class IntroState extends State {
 
+    private static final Logger LOG = LoggerFactory.getLogger(IntroState.class);
+
     private float time = 0f;
 
     private boolean zoomingIn = false;
+    private InputRecording replay = null;
     private static final float ZOOMING_IN_DURATION = 1f;
+    /** Mowers added by the stress test key */
+    private static final int SWARM_SIZE = 500;
 
     public IntroState(Game game) {
         super(game);
@@ -94,23 +105,55 @@ public final class IntroState extends State {
     @Override
     public boolean keyUp(int keycode) {
         if (keycode == Input.Keys.F5) {
-            game.level = new Level(1, System.currentTimeMillis());
+            game.level = game.levelCache.get(1, System.currentTimeMillis());
             return true;
         }
         if (keycode == Input.Keys.F6) {
-            game.level = new Level((int) (System.currentTimeMillis() % 100), System.currentTimeMillis());
+            game.level = game.levelCache.get((int) (System.currentTimeMillis() % 100), System.currentTimeMillis());
             return true;
         }
         if (keycode == Input.Keys.F7) {
-            game.level = new Level(66, 66);
+            game.level = game.levelCache.get(66, 66);
+            return true;
+        }
+        if (keycode == Input.Keys.F8) {
+            game.level = Level.endless(System.currentTimeMillis());
+            return true;
+        }
+        if (keycode == Input.Keys.F11 && !game.level.isEndless()) {
+            // Stress test with many mowers
+            game.level = game.levelCache.get(game.level.order, game.level.seed);
+            game.level.swarm = new MowerSwarm(game.level, SWARM_SIZE, game.level.seed);
             return true;
         }
+        if (keycode == Input.Keys.F10) {
+            // Let the bot play, until turned off again
+            game.autopilot = !game.autopilot;
+            return true;
+        }
+        if (keycode == Input.Keys.F9 && !zoomingIn) {
+            // Replay the last played level
+            try {
+                replay = InputRecording.load(GameState.LAST_RECORDING);
+            } catch (IOException e) {
+                LOG.warn("Failed to load input recording", e);
+            }
+            if (replay == null) {
+                return true;
+            }
+            game.level = replay.createLevel(game.levelCache);
+        }
 
         if (!zoomingIn) {
             zoomingIn = true;
             game.cameraman.next(game.CAMERA_SHOT_PLAYER_VIEW, ZOOMING_IN_DURATION, Interpolation.smooth);
             game.schedule(ZOOMING_IN_DURATION, () -> {
-                game.setState(new GameState(game, 0));
+                if (replay == null && game.resumed != null && game.resumed.level == game.level) {
+                    game.setState(new GameState(game, game.resumed));
+                } else {
+                    game.setState(new GameState(game, 0, replay == null ? null : replay.replay()));
+                }
+                game.resumed = null;
             });
             return true;
         }